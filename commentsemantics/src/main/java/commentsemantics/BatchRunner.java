@@ -0,0 +1,508 @@
+package commentsemantics;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import featurelocation.ArtifactCache;
+import featurelocation.BatchSearch;
+import featurelocation.CorpusIndex;
+import featurelocation.FeatureLocation;
+import featurelocation.LsiEngine;
+import featurelocation.LsiFeatureLocation;
+import featurelocation.NoFeatureLocation;
+import featurelocation.SvdFeatureLocation;
+import featurelocation.TermDictionary;
+import featurelocation.TermDocument;
+import featurelocation.VsmDocSimilarity;
+import featurelocation.VsmFeatureLocation;
+import parser.CodeCommentParser;
+import parser.FileParser;
+import parser.ProjectParser;
+import parser.TokenCache;
+import queryresult.GoldSetEvaluator;
+import queryresult.ResultStore;
+
+// Gold set evaluation without the UI, for every combination of the given projects, comment modes and FL techniques.
+// A configuration assembles the documents of one project with one set of search options into its own parser and
+// corpus index, and the LSI engines of the techniques. Every FL technique then runs every query set on them: the
+// VSM and the similar documents on the shared index, LSI and SVD on their engine. The configurations go on in
+// parallel. A project of several configurations is parsed once into a token cache with the syntax tree, each
+// configuration assembles its documents from the tokens.
+// The results of a run are written as the UI writes them, per query and the FinalResult, into
+// <result dir>/<project>/<configuration>/<technique>/<query set>, the scores of all runs into BatchSummary.
+// A sweep runs every comment mode with and without artefacts and commented code removal.
+// Usage: BatchRunner [-goldset dir] [-result dir] [-projects ecf,tomcat70,..] [-querysets NL,PE,ST]
+//        [-modes all,line,block,javadoc] [-techniques VSM,LSI,SVD] [-removecode] [-artefacts] [-sweep] [-threads n]
+// Without an option, every gold set project, query set and comment mode is evaluated with VSM and LSI.
+public class BatchRunner
+{
+	public enum CommentMode
+	{
+		ALL("all", "All Comments"), LINE("line", "Line Comments"), BLOCK("block", "Block Comments"), JAVADOC("javadoc", "JavaDoc Comments");
+
+		private final String option;
+		private final String executionName;  // as the UI names it
+
+		private CommentMode(String option, String executionName)
+		{
+			this.option = option;
+			this.executionName = executionName;
+		}
+
+		public static CommentMode fromOption(String option)
+		{
+			for(CommentMode mode : values()) {
+				if(mode.option.equalsIgnoreCase(option))
+					return mode;
+			}
+			throw new IllegalArgumentException("Unknown comment mode: " + option);
+		}
+	}
+
+	// LSI is the random indexing of the semantic vectors, SVD the truncated SVD
+	public enum Technique {VSM, LSI, SVD}
+
+	// one project in one configuration of the search options, run with every FL technique
+	private static class Configuration
+	{
+		private final String project;
+		private final CommentMode mode;
+		private final boolean includeArtefacts;
+		private final boolean removeCodeComments;
+
+		private Configuration(String project, CommentMode mode, boolean includeArtefacts, boolean removeCodeComments)
+		{
+			this.project = project;
+			this.mode = mode;
+			this.includeArtefacts = includeArtefacts;
+			this.removeCodeComments = removeCodeComments;
+		}
+
+		// directory name of the search options
+		private String configuration() {
+			return mode.option + (includeArtefacts ? "+artefacts" : "") + (removeCodeComments ? "-nocodecomments" : "");
+		}
+
+		// name of the run of a technique
+		private String run(Technique technique) {
+			return this + "/" + technique;
+		}
+
+		@Override
+		public String toString() {
+			return project + "/" + configuration();
+		}
+	}
+
+	// the LSI engines of a configuration, each prepared with the documents of the one parse
+	private static class EngineGroup implements FeatureLocation
+	{
+		private final Collection<LsiEngine> engines;
+
+		private EngineGroup(Collection<LsiEngine> engines) {
+			this.engines = engines;
+		}
+
+		public void prepareDocument(String fileName, TermDocument data)
+		{
+			for(LsiEngine engine : engines) {
+				engine.prepareDocument(fileName, data);
+			}
+		}
+
+		public void removeDocument(String fileName)
+		{
+			for(LsiEngine engine : engines) {
+				engine.removeDocument(fileName);
+			}
+		}
+
+		public void commit()
+		{
+			for(LsiEngine engine : engines) {
+				engine.commit();
+			}
+		}
+
+		public boolean openWorkspace(File workspaceDir)
+		{
+			boolean opened = true;
+			for(LsiEngine engine : engines) {
+				opened &= engine.openWorkspace(workspaceDir);
+			}
+			return opened;
+		}
+
+		public void reset()
+		{
+			for(LsiEngine engine : engines) {
+				engine.reset();
+			}
+		}
+	}
+
+	private File goldsetDir = new File("Goldset");
+	private File resultDir = new File("result");
+	private List<String> projects = GoldSetEvaluator.Goldset_Projects;
+	private List<String> querySets = GoldSetEvaluator.Goldset_QuerySets;
+	private List<CommentMode> modes = Arrays.asList(CommentMode.values());
+	private List<Technique> techniques = Arrays.asList(Technique.VSM, Technique.LSI);
+	private boolean removeCodeComments = false;
+	private boolean includeArtefacts = false;
+	private boolean sweep = false;          // with and without artefacts and commented code removal
+	private int threadCount = Runtime.getRuntime().availableProcessors();  // configurations at once
+
+	private final ArtifactCache artifactCache = ArtifactCache.defaultCache();  // trained LSI spaces, shared by the runs
+
+	public static void main(String[] args)
+	{
+		BatchRunner runner = new BatchRunner();
+		try {
+			runner.parseArguments(args);
+		}
+		catch(IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.out.println("Usage: BatchRunner [-goldset dir] [-result dir] [-projects ecf,tomcat70,..] [-querysets NL,PE,ST] "
+					+ "[-modes all,line,block,javadoc] [-techniques VSM,LSI,SVD] [-removecode] [-artefacts] [-sweep] [-threads n]");
+			return;
+		}
+		runner.runAll();
+	}
+
+	private void parseArguments(String[] args)
+	{
+		for(int i=0; i<args.length; ++i) {
+			String option = args[i];
+
+			if(option.equals("-removecode")) {
+				removeCodeComments = true;
+				continue;
+			}
+			if(option.equals("-artefacts")) {
+				includeArtefacts = true;
+				continue;
+			}
+			if(option.equals("-sweep")) {
+				sweep = true;
+				continue;
+			}
+
+			if(i + 1 >= args.length)
+				throw new IllegalArgumentException("Missing value of " + option);
+			String value = args[++i];
+			List<String> values = Arrays.asList(value.split(","));
+
+			switch(option) {
+			case "-goldset":
+				goldsetDir = new File(value);
+				break;
+			case "-result":
+				resultDir = new File(value);
+				break;
+			case "-projects":
+				projects = values;
+				break;
+			case "-querysets":
+				querySets = values;
+				break;
+			case "-modes":
+				modes = new ArrayList<CommentMode>();
+				for(String mode : values) {
+					modes.add(CommentMode.fromOption(mode));
+				}
+				break;
+			case "-techniques":
+				techniques = new ArrayList<Technique>();
+				for(String technique : values) {
+					techniques.add(Technique.valueOf(technique.toUpperCase()));
+				}
+				break;
+			case "-threads":
+				threadCount = Math.max(1, Integer.parseInt(value));
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + option);
+			}
+		}
+	}
+
+	// Every configuration of the matrix on the thread pool, a project after the other so only the tokens of one
+	// project are kept. Then a line per run and query set in the order of the matrix, also stored as the BatchSummary.
+	public void runAll()
+	{
+		boolean[] artefactOptions = sweep ? new boolean[] {false, true} : new boolean[] {includeArtefacts};
+		boolean[] removeCodeOptions = sweep ? new boolean[] {false, true} : new boolean[] {removeCodeComments};
+
+		Map<String, List<Configuration>> projectConfigurations = new LinkedHashMap<String, List<Configuration>>();
+		int configurationCount = 0;
+		for(String project : projects) {
+			List<Configuration> configurations = new ArrayList<Configuration>();
+			for(CommentMode mode : modes) {
+				for(boolean artefacts : artefactOptions) {
+					for(boolean removeCode : removeCodeOptions) {
+						configurations.add(new Configuration(project, mode, artefacts, removeCode));
+					}
+				}
+			}
+			projectConfigurations.put(project, configurations);
+			configurationCount += configurations.size();
+		}
+
+		if(configurationCount == 0 || techniques.isEmpty())
+			return;
+
+		long startTime = System.currentTimeMillis();
+		int cores = Runtime.getRuntime().availableProcessors();
+		int poolSize = Math.min(threadCount, configurationCount);
+		System.out.println("Batch: " + configurationCount * techniques.size() + " runs of " + configurationCount + " configurations, " + poolSize + " at once");
+
+		List<String> report = new ArrayList<String>();
+		ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+
+		try {
+			for(Map.Entry<String, List<Configuration>> entry : projectConfigurations.entrySet()) {
+				List<Configuration> configurations = entry.getValue();
+				if(configurations.isEmpty())
+					continue;
+
+				//parser workers and queries of a configuration share the cores left by the configurations at once
+				int configurationsAtOnce = Math.min(poolSize, configurations.size());
+				int innerThreads = Math.max(1, cores / configurationsAtOnce);
+
+				TokenCache tokenCache = null;
+				if(configurations.size() > 1) {
+					long parseStart = System.currentTimeMillis();
+					tokenCache = parseTokens(entry.getKey());
+					report.add(entry.getKey() + ": parsed once for " + configurations.size() + " configurations in " + (System.currentTimeMillis() - parseStart) + " ms");
+				}
+
+				List<Future<List<String>>> futures = new ArrayList<Future<List<String>>>();
+				for(Configuration configuration : configurations) {
+					TokenCache configurationTokens = tokenCache;
+					futures.add(executor.submit(() -> evaluate(configuration, configurationTokens, innerThreads)));
+				}
+
+				for(int i=0; i<configurations.size(); ++i) {
+					try {
+						report.addAll(futures.get(i).get());
+					}
+					catch(ExecutionException e) {
+						e.getCause().printStackTrace();
+						report.add(configurations.get(i) + ": failed, " + e.getCause());
+					}
+				}
+			}
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		report.add("Batch time " + (System.currentTimeMillis() - startTime) / 1000 + " Seconds");
+		System.out.println(String.join(System.lineSeparator(), report));
+
+		ResultStore summaryStore = new ResultStore(resultDir);
+		summaryStore.OpenStore("BatchSummary");
+		for(String line : report) {
+			summaryStore.WriteData(line);
+		}
+		summaryStore.PrintLineSeperator();
+		summaryStore.CloseStore();
+	}
+
+	// Parses the project on all cores into a token cache with the syntax tree, the tokens of every search option.
+	// The comments excluded for their code are stored with the project.
+	private TokenCache parseTokens(String project)
+	{
+		TokenCache tokenCache = new TokenCache();
+
+		CodeCommentParser codeCommentParser = new CodeCommentParser(new ResultStore(new File(resultDir, project)));
+		FileParser fileParser = new FileParser(codeCommentParser);
+		fileParser.setCorpusIndex(new NoFeatureLocation());
+		fileParser.setLsiFL(new NoFeatureLocation());
+		fileParser.setTermDictionary(new TermDictionary());
+		fileParser.setUseAllComments(true);
+		fileParser.setIncludeArtefacts(true);  //needs the syntax tree
+
+		ProjectParser projParser = new ProjectParser(fileParser);
+		projParser.setWorkerCount(Runtime.getRuntime().availableProcessors());
+		projParser.setTokenCache(tokenCache);
+
+		parse(projParser, codeCommentParser, GoldSetEvaluator.sourceDir(goldsetDir, project));
+		return tokenCache;
+	}
+
+	// parses without a manifest, a run is never updated and the manifest of the project is left to the UI
+	private static void parse(ProjectParser projParser, CodeCommentParser codeCommentParser, File projDir)
+	{
+		projParser.setSaveManifest(false);
+
+		codeCommentParser.Begin();
+		try {
+			projParser.parseProject(projDir);
+		}
+		finally {
+			codeCommentParser.End();
+		}
+	}
+
+	// Parses the project of the configuration, from the tokens if given, and evaluates each query set with every
+	// technique, a line per run and query set for the report. The corpus index and the similar documents are shared
+	// by the techniques, the LSI engines are prepared in the same parse. Every instance of the configuration is its
+	// own, the configurations only share the tokens and the artifact cache.
+	private List<String> evaluate(Configuration configuration, TokenCache tokenCache, int innerThreads) throws Exception
+	{
+		List<String> lines = new ArrayList<String>();
+		File configurationDir = new File(new File(resultDir, configuration.project), configuration.configuration());
+
+		TermDictionary termDictionary = new TermDictionary();
+		CorpusIndex corpusIndex = new CorpusIndex();
+		VsmFeatureLocation vsmFL = new VsmFeatureLocation(corpusIndex);
+		VsmDocSimilarity vsmDocSimilarity = new VsmDocSimilarity(corpusIndex, termDictionary);
+
+		Map<Technique, LsiEngine> lsiEngines = new LinkedHashMap<Technique, LsiEngine>();  // technique : its engine, none for VSM
+		for(Technique technique : techniques) {
+			if(technique == Technique.LSI)
+				lsiEngines.put(technique, new LsiFeatureLocation());
+			else if(technique == Technique.SVD)
+				lsiEngines.put(technique, new SvdFeatureLocation());
+		}
+		for(LsiEngine lsiEngine : lsiEngines.values()) {
+			lsiEngine.setArtifactCache(artifactCache);
+		}
+
+		CodeCommentParser codeCommentParser = new CodeCommentParser(new ResultStore(configurationDir));  //CommentsExcluded of the configuration
+		FileParser fileParser = new FileParser(codeCommentParser);
+		fileParser.setCorpusIndex(corpusIndex);
+		fileParser.setTermDictionary(termDictionary);
+		fileParser.setRemoveCodeComments(configuration.removeCodeComments);
+		fileParser.setIncludeArtefacts(configuration.includeArtefacts);
+		fileParser.setUseAllComments(configuration.mode == CommentMode.ALL);
+		fileParser.setUseLineComments(configuration.mode == CommentMode.LINE);
+		fileParser.setUseBlockComment(configuration.mode == CommentMode.BLOCK);
+		fileParser.setUseJavadocComment(configuration.mode == CommentMode.JAVADOC);
+		fileParser.setLsiFL(lsiEngines.isEmpty() ? new NoFeatureLocation() : new EngineGroup(lsiEngines.values()));
+
+		ProjectParser projParser = new ProjectParser(fileParser);
+		projParser.setWorkerCount(innerThreads);
+		projParser.setTokenCache(tokenCache);
+
+		BatchSearch batchSearch = new BatchSearch();
+		batchSearch.setThreadCount(innerThreads);
+
+		//parse once for every technique
+		long startTime = System.currentTimeMillis();
+		fileParser.reset();
+		parse(projParser, codeCommentParser, GoldSetEvaluator.sourceDir(goldsetDir, configuration.project));
+		long parseTime = System.currentTimeMillis() - startTime;
+
+		for(Technique technique : techniques) {
+			File runDir = new File(configurationDir, technique.name());
+
+			//build time of a run is the parse and the build of its engine
+			LsiEngine lsiEngine = lsiEngines.get(technique);
+			long buildStart = System.currentTimeMillis();
+			if(lsiEngine != null)
+				lsiEngine.buildSemanticVectors();
+			long buildTime = parseTime + System.currentTimeMillis() - buildStart;
+
+			for(String querySet : querySets) {
+				ResultStore resultStore = new ResultStore(new File(runDir, querySet));
+				GoldSetEvaluator goldsetEvaluator = new GoldSetEvaluator(resultStore, GoldSetEvaluator.queryFile(goldsetDir, configuration.project, querySet),
+						GoldSetEvaluator.resultFile(goldsetDir, configuration.project, querySet));
+
+				Map<Integer, String> queries = goldsetEvaluator.GetQueries();
+				if(queries.isEmpty()) {
+					lines.add(configuration.run(technique) + "/" + querySet + ": no queries");
+					continue;
+				}
+
+				long queryStart = System.currentTimeMillis();
+				Map<Integer, List<String>> docs;
+				if(lsiEngine != null)
+					docs = batchSearch.search(queries, lsiEngine::LsiQuerySearch);
+				else
+					docs = batchSearch.search(queries, vsmFL::VsmQuerySearch);
+				Map<Integer, List<String>> similarDocs = batchSearch.search(topDocuments(docs), vsmDocSimilarity::vsmGetSimilarDocuments);
+
+				GoldSetEvaluator.FLType flType = (lsiEngine != null) ? GoldSetEvaluator.FLType.LSI : GoldSetEvaluator.FLType.VSM;
+				for(Map.Entry<Integer, String> entry : queries.entrySet()) {
+					writeQueryResult(resultStore, goldsetEvaluator, flType, entry.getKey(), entry.getValue(), docs.get(entry.getKey()), similarDocs.get(entry.getKey()));
+				}
+
+				String scores = goldsetEvaluator.meanScores(flType);
+				resultStore.OpenStore("FinalResult");
+				goldsetEvaluator.printFinalScore(executionName(configuration, technique));
+				resultStore.CloseStore();
+
+				lines.add(configuration.run(technique) + "/" + querySet + ": " + scores + ", " + queries.size() + " queries, build " + buildTime + " ms, queries "
+						+ (System.currentTimeMillis() - queryStart) + " ms");
+			}
+		}
+
+		return lines;
+	}
+
+	// query id : top document of the query, for the queries with results
+	private static Map<Integer, String> topDocuments(Map<Integer, List<String>> docs)
+	{
+		Map<Integer, String> topDocs = new LinkedHashMap<Integer, String>();
+
+		for(Map.Entry<Integer, List<String>> entry : docs.entrySet()) {
+			if(entry.getValue().size() > 0)
+				topDocs.put(entry.getKey(), entry.getValue().get(0));
+		}
+
+		return topDocs;
+	}
+
+	// the store of the query, as the UI writes it
+	private static void writeQueryResult(ResultStore resultStore, GoldSetEvaluator goldsetEvaluator, GoldSetEvaluator.FLType flType,
+			Integer queryNumber, String query, List<String> docs, List<String> similarDocs)
+	{
+		resultStore.OpenStore(queryNumber.toString());
+		resultStore.WriteData("Query:" + query);
+
+		if(docs != null) {
+			if(flType == GoldSetEvaluator.FLType.LSI)
+				resultStore.PersistLsiQueryResult(docs);
+			else
+				resultStore.PersistVsmQueryResult(docs);
+
+			if(similarDocs != null)
+				resultStore.PersistSimilarDocResult(similarDocs);
+			else
+				similarDocs = new ArrayList<String>();
+
+			goldsetEvaluator.EvaluateQueryResult(flType, queryNumber, docs);
+			goldsetEvaluator.EvaluateSimilairyResult(flType, queryNumber, similarDocs);
+		}
+
+		resultStore.PrintLineSeperator();
+		resultStore.CloseStore();
+	}
+
+	private static String executionName(Configuration configuration, Technique technique)
+	{
+		String execName = configuration.mode.executionName;
+
+		if(configuration.includeArtefacts)
+			execName += " & Artefacts";
+
+		if(configuration.removeCodeComments)
+			execName += "-Code comments removed";
+
+		return execName + "-" + technique;
+	}
+}
@@ -5,6 +5,8 @@ import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -19,55 +21,77 @@ import javax.swing.JPanel;
 import javax.swing.JTextField;
 import javax.swing.JRadioButton;
 
+import featurelocation.ArtifactCache;
+import featurelocation.BatchSearch;
+import featurelocation.CorpusIndex;
+import featurelocation.LsiEngine;
 import featurelocation.LsiFeatureLocation;
+import featurelocation.SvdFeatureLocation;
+import featurelocation.TermDictionary;
 import featurelocation.VsmDocSimilarity;
 import featurelocation.VsmFeatureLocation;
 import parser.CodeCommentParser;
+import parser.FileManifest;
 import parser.FileParser;
 import parser.ProjectParser;
+import parser.TokenCache;
 import queryresult.GoldSetEvaluator;
 import queryresult.ResultStore;
 
 public class UserScreen 
 {
-	static JPanel contentPane = new JPanel();	
+	JPanel contentPane = new JPanel();	
 	
-	static JButton button1 = new JButton("Browse Project");
-	static JButton queryButton = new JButton("Run Query");
+	JButton button1 = new JButton("Browse Project");
+	JButton queryButton = new JButton("Run Query");
 	
-	static JCheckBox check_goldsetEvaluation = new JCheckBox("Goldset Evaluation Mode");
+	JCheckBox check_goldsetEvaluation = new JCheckBox("Goldset Evaluation Mode");
 	
-	static JCheckBox check_removeCodeComments = new JCheckBox("Exclude Commented Code");
-	static JCheckBox check_includeArtefacts = new JCheckBox("Include Artefacts");
+	JCheckBox check_removeCodeComments = new JCheckBox("Exclude Commented Code");
+	JCheckBox check_includeArtefacts = new JCheckBox("Include Artefacts");
+	JCheckBox check_persistIndex = new JCheckBox("Keep Index On Disk");
+	JCheckBox check_leanIndex = new JCheckBox("Lean Index");
 	
-	static JFileChooser fchooser = new JFileChooser();
+	JFileChooser fchooser = new JFileChooser();
 	
-	static JLabel l3 = new JLabel("Query:");
-	static JTextField text_query = new JTextField();
+	JLabel l3 = new JLabel("Query:");
+	JTextField text_query = new JTextField();
 	
 	
 	//radio buttons
-	static JLabel radio_Searchlabel = new JLabel("Search Options:");
+	JLabel radio_Searchlabel = new JLabel("Search Options:");
 	JRadioButton radio_allcomments=new JRadioButton("All Comments", true);    
 	JRadioButton radio_linecomments=new JRadioButton("Line Comments");
 	JRadioButton radio_blockcomments=new JRadioButton("Block Comments");
 	JRadioButton radio_doccomments=new JRadioButton("Javadoc Comments");
 	ButtonGroup bgSeachOption = new ButtonGroup();
 	
-	static JLabel radio_FLlabel = new JLabel("FL Techniques:");
+	JLabel radio_FLlabel = new JLabel("FL Techniques:");
 	JCheckBox check_vsm=new JCheckBox("VSM");    
 	JCheckBox check_lsi=new JCheckBox("LSI");	
+	JCheckBox check_svd=new JCheckBox("LSI by SVD");
+	JCheckBox check_commentSources=new JCheckBox("Switch Without Reindex");  // index every comment source, the search options choose them at query time
 	
 	//non-UI elements
 	private String projDir 			 = "";
+	private String indexedProjDir    = "";  // project and search options held by the FL techniques
+	private String indexedOptions    = "";
+	private String tokenCacheProjDir = "";  // project of the cached tokens
 		
-	VsmFeatureLocation vsmFL = new VsmFeatureLocation();
+	TermDictionary termDictionary = new TermDictionary();
+	CorpusIndex corpusIndex = new CorpusIndex();
+	VsmFeatureLocation vsmFL = new VsmFeatureLocation(corpusIndex);
 	LsiFeatureLocation lsiFL = new LsiFeatureLocation();
-	VsmDocSimilarity vsmDocSimilarity = new VsmDocSimilarity();
+	SvdFeatureLocation svdFL = new SvdFeatureLocation();
+	ArtifactCache artifactCache = ArtifactCache.defaultCache();  // trained LSI spaces, a rerun of the same documents reads them
+	VsmDocSimilarity vsmDocSimilarity = new VsmDocSimilarity(corpusIndex, termDictionary);
 	
-	CodeCommentParser codeCommentParser = new CodeCommentParser();
+	CodeCommentParser codeCommentParser = new CodeCommentParser(new ResultStore());  //CommentsExcluded of the UI in the result directory
 	FileParser fileParser = new FileParser(codeCommentParser);
 	ProjectParser projParser = new ProjectParser(fileParser);
+	TokenCache tokenCache = new TokenCache();
+	
+	BatchSearch batchSearch = new BatchSearch();
 	
 	ResultStore resultStore = new ResultStore();
 	GoldSetEvaluator goldsetEvaluator = new GoldSetEvaluator(resultStore);
@@ -78,6 +102,9 @@ public class UserScreen
 		myUI.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		myUI.setBounds(0, 0, 425, 525);
 		myUI.setTitle("Feature Location Assessment App");
+		
+		lsiFL.setArtifactCache(artifactCache);
+		svdFL.setArtifactCache(artifactCache);
 
 		contentPane.setLayout(null);
 		myUI.setContentPane(contentPane);
@@ -111,6 +138,7 @@ public class UserScreen
 		contentPane.add(radio_doccomments);
 		contentPane.add(check_vsm);
 		contentPane.add(check_lsi);
+		contentPane.add(check_svd);
 		contentPane.add(radio_Searchlabel);
 		contentPane.add(radio_FLlabel);
 		
@@ -119,18 +147,30 @@ public class UserScreen
 		radio_linecomments.setBounds(48, 220, 150, 20);
 		radio_blockcomments.setBounds(48, 250, 150, 20);
 		radio_doccomments.setBounds(48, 280, 150, 20);
+		check_commentSources.setBounds(200, 190, 180, 20);
+		contentPane.add(check_commentSources);
 		
 		radio_FLlabel.setBounds(50, 320, 150, 20);			
 		check_vsm.setBounds(48, 340, 150, 20);
 		check_lsi.setBounds(48, 370, 150, 20);
+		check_svd.setBounds(200, 370, 180, 20);
 		
 		queryButton.setBounds(50, 420, 140, 25);
 		contentPane.add(queryButton);
 		
+		check_persistIndex.setBounds(200, 422, 180, 20);
+		contentPane.add(check_persistIndex);
+		
+		check_leanIndex.setBounds(200, 447, 180, 20);
+		contentPane.add(check_leanIndex);
+		
 		//non-UI elements
-		fileParser.setVsmFL(vsmFL);
+		fileParser.setCorpusIndex(corpusIndex);
 		fileParser.setLsiFL(lsiFL);
-		fileParser.setDocumentSimilarity(vsmDocSimilarity);
+		fileParser.setTermDictionary(termDictionary);
+		projParser.setWorkerCount(Runtime.getRuntime().availableProcessors());
+		projParser.setTokenCache(tokenCache);
+		batchSearch.setThreadCount(Runtime.getRuntime().availableProcessors());
 		
 				
 		myUI.setVisible(true);
@@ -181,23 +221,9 @@ public class UserScreen
 					
 					parseProject();			
 					if(check_lsi.isSelected())
-						lsiFL.buildSemanticVectors();
+						lsiEngine().buildSemanticVectors();
 					
-					for(Map.Entry<Integer, String> entry : goldsetEvaluator.GetQueries().entrySet())
-					{
-						resultStore.OpenStore(entry.getKey().toString());
-						
-						System.out.println("Query Number:" + entry.getKey());
-						runQuery(entry.getKey(), entry.getValue());
-						
-						resultStore.CloseStore();
-						
-						try {
-							Thread.sleep(300);  // a litle delay b/w each qury execution
-						} catch (InterruptedException e) {
-							e.printStackTrace();
-						}
-					}
+					runQueries(goldsetEvaluator.GetQueries(), true);
 					
 					resultStore.OpenStore("FinalResult");
 					goldsetEvaluator.printFinalScore(ExecutionName());
@@ -210,14 +236,12 @@ public class UserScreen
 					
 					parseProject();
 					if(check_lsi.isSelected())
-						lsiFL.buildSemanticVectors();
+						lsiEngine().buildSemanticVectors();
 					
-					String query = text_query.getText();
-					resultStore.OpenStore(query);
+					Map<Integer, String> queries = new HashMap<Integer, String>();
+					queries.put(0, text_query.getText());
 					
-					runQuery(0, query);
-					
-					resultStore.CloseStore();
+					runQueries(queries, false);
 				}
 				
 				long endTime = System.currentTimeMillis();
@@ -251,7 +275,6 @@ public class UserScreen
 	
 	private void parseProject()
 	{
-		fileParser.reset();
 		goldsetEvaluator.Reset();
 		codeCommentParser.Begin();
 		
@@ -261,7 +284,9 @@ public class UserScreen
 		boolean lineComments = radio_linecomments.isSelected();
 		boolean blockComments = radio_blockcomments.isSelected();
 		boolean docComments = radio_doccomments.isSelected();
+		boolean commentSources = check_commentSources.isSelected();
 		
+		fileParser.setIndexSources(commentSources);
 		fileParser.setRemoveCodeComments(removeCodeComments);
 		fileParser.setIncludeArtefacts(includeArtefacts);
 		fileParser.setUseAllComments(allComments);
@@ -269,58 +294,165 @@ public class UserScreen
 		fileParser.setUseBlockComment(blockComments);
 		fileParser.setUseJavadocComment(docComments);
 		
-		projParser.parseProject(new File(projDir));
+		// same project with the same search options only re-parses the files changed since the last run,
+		// an on-disk index of an earlier launch is opened and updated the same way
+		boolean persistIndex = check_persistIndex.isSelected();
+		CorpusIndex.Profile profile = check_leanIndex.isSelected() ? CorpusIndex.Profile.LEAN : CorpusIndex.Profile.FULL;
+		// an index of the comment sources changes the search options without parsing, unless LSI needs their documents
+		String documentOptions = commentSources ? (check_lsi.isSelected() ? ExecutionName() : "") + "-comment sources" : ExecutionName();
+		String options = documentOptions + (persistIndex ? "-on disk" : "") + "-" + profile + (check_svd.isSelected() ? "-SVD" : "");
+		boolean indexed = projDir.equals(indexedProjDir) && options.equals(indexedOptions);
+		
+		if(!indexed) {
+			corpusIndex.setProfile(profile);
+			svdFL.setQuantized(persistIndex);  //an index on disk keeps the SVD document vectors in a mapped store too
+			fileParser.setLsiFL(lsiEngine());
+			
+			File workspaceDir = null;
+			if(persistIndex) {
+				workspaceDir = FileManifest.workspaceDir(new File(projDir), fileParser.getOptionsKey() + ";profile=" + profile + (check_svd.isSelected() ? ";lsi=svd" : ""));
+				projParser.setManifestFile(new File(workspaceDir, "manifest.txt"));
+			}
+			else {
+				projParser.setManifestFile(null);
+			}
+			
+			indexed = fileParser.openWorkspace(workspaceDir);
+		}
+		
+		// tokens are cached per project, changing search options assembles the documents without parsing
+		if(!projDir.equals(tokenCacheProjDir)) {
+			tokenCache.clear();
+			if(persistIndex)
+				tokenCache.load(TokenCache.cacheFile(new File(projDir)));
+			tokenCacheProjDir = projDir;
+		}
+		
+		boolean updated = indexed && projParser.updateProject(new File(projDir));
+		
+		if(!updated) {
+			fileParser.reset();
+			projParser.parseProject(new File(projDir));
+		}
+		
+		if(persistIndex)
+			tokenCache.save(TokenCache.cacheFile(new File(projDir)));
+		
+		System.out.println("Corpus index " + profile + ": " + corpusIndex.getIndexSize() / 1024 + " KB, index time " + corpusIndex.getIndexTime() / 1000000 + " ms");
+		
+		indexedProjDir = projDir;
+		indexedOptions = options;
+		
+		// fields of the comment sources of the search options
+		Map<String, Float> sourceFields = commentSources ? fileParser.getSourceFields() : null;
+		vsmFL.setSearchFields(sourceFields);
+		vsmDocSimilarity.setSearchFields((sourceFields != null) ? new ArrayList<String>(sourceFields.keySet()) : null);
 		
 		codeCommentParser.End();
 	}
 	
-	private void runQuery(Integer queryNumber, String query)
+	// LSI by the truncated SVD of the term-document matrix, or the random indexing of the semantic vectors
+	private LsiEngine lsiEngine()
+	{
+		if(check_svd.isSelected())
+			return svdFL;
+		return lsiFL;
+	}
+	
+	// Runs the queries of every selected FL technique as a batch, then stores and evaluates the results in query order.
+	// Each gold set query has its own store, named by its number.
+	private void runQueries(Map<Integer, String> queries, boolean goldset)
+	{
+		Map<Integer, List<String>> vsmDocs = new HashMap<Integer, List<String>>();
+		Map<Integer, List<String>> vsmSimilarDocs = new HashMap<Integer, List<String>>();
+		Map<Integer, List<String>> lsiDocs = new HashMap<Integer, List<String>>();
+		Map<Integer, List<String>> lsiSimilarDocs = new HashMap<Integer, List<String>>();
+		
+		if(check_vsm.isSelected()) {
+			vsmDocs = batchSearch.search(queries, vsmFL::VsmQuerySearch);
+			vsmSimilarDocs = batchSearch.search(topDocuments(vsmDocs), vsmDocSimilarity::vsmGetSimilarDocuments);
+		}
+		
+		if(check_lsi.isSelected()) {
+			LsiEngine lsiEngine = lsiEngine();
+			lsiDocs = batchSearch.search(queries, lsiEngine::LsiQuerySearch);
+			System.out.println("LSI query latency " + String.format("%.2f", lsiEngine.getAverageQueryLatency()) + " ms, "
+					+ lsiEngine.getSlowQueryCount() + " queries over the " + lsiEngine.getLatencyTarget() + " ms target");
+			lsiSimilarDocs = batchSearch.search(topDocuments(lsiDocs), vsmDocSimilarity::vsmGetSimilarDocuments);
+		}
+		
+		for(Map.Entry<Integer, String> entry : queries.entrySet())
+		{
+			Integer queryNumber = entry.getKey();
+			
+			if(goldset) {
+				resultStore.OpenStore(queryNumber.toString());
+				System.out.println("Query Number:" + queryNumber);
+			}
+			else {
+				resultStore.OpenStore(entry.getValue());
+			}
+			
+			writeQueryResult(queryNumber, entry.getValue(), vsmDocs.get(queryNumber), vsmSimilarDocs.get(queryNumber), 
+					lsiDocs.get(queryNumber), lsiSimilarDocs.get(queryNumber));
+			
+			resultStore.CloseStore();
+		}
+	}
+	
+	// query id : top document of the query, for the queries with results
+	private Map<Integer, String> topDocuments(Map<Integer, List<String>> docs)
+	{
+		Map<Integer, String> topDocs = new LinkedHashMap<Integer, String>();
+		
+		for(Map.Entry<Integer, List<String>> entry : docs.entrySet()) {
+			if(entry.getValue().size() > 0)
+				topDocs.put(entry.getKey(), entry.getValue().get(0));
+		}
+		
+		return topDocs;
+	}
+	
+	private void writeQueryResult(Integer queryNumber, String query, List<String> vsmDocs, List<String> vsmSimilarDocs, 
+			List<String> lsiDocs, List<String> lsiSimilarDocs)
 	{
 		List<String> docs = new ArrayList<String>();
 		List<String> similarDocs = new ArrayList<String>();
 		
-		try 
-		{
-			resultStore.WriteData("Query:" + query);
+		resultStore.WriteData("Query:" + query);
+		
+		if(check_vsm.isSelected() && vsmDocs != null) {
+			docs = vsmDocs;
+			resultStore.PersistVsmQueryResult(docs);
 			
-			if(check_vsm.isSelected()) {
-				docs = vsmFL.VsmQuerySearch(query);
-				resultStore.PersistVsmQueryResult(docs);
-				
-				//Find the similar document using the VSM cosine similarity for topdoc
-				if(docs.size() > 0) {
-					similarDocs = vsmDocSimilarity.vsmGetSimilarDocuments(docs.get(0));
-					resultStore.PersistSimilarDocResult(similarDocs);
-				}
-				
-				if(queryNumber != 0) {
-					goldsetEvaluator.EvaluateQueryResult(GoldSetEvaluator.FLType.VSM, queryNumber, docs);  //evaluate the qury result against the gold set
-					goldsetEvaluator.EvaluateSimilairyResult(GoldSetEvaluator.FLType.VSM, queryNumber, similarDocs);  //valuating the similarity against gold set
-				}
+			//similar documents of the top document, found with the VSM cosine similarity
+			if(vsmSimilarDocs != null) {
+				similarDocs = vsmSimilarDocs;
+				resultStore.PersistSimilarDocResult(similarDocs);
 			}
 			
-			if(check_lsi.isSelected()) {
-				docs = lsiFL.LsiQuerySearch(query);
-				resultStore.PersistLsiQueryResult(docs);
-				
-				//Find the similar document using the VSM cosine similarity for topdoc
-				if(docs.size() > 0) {
-					similarDocs = vsmDocSimilarity.vsmGetSimilarDocuments(docs.get(0));
-					resultStore.PersistSimilarDocResult(similarDocs);
-				}
-				
-				if(queryNumber != 0) {
-					goldsetEvaluator.EvaluateQueryResult(GoldSetEvaluator.FLType.LSI, queryNumber, docs);
-					goldsetEvaluator.EvaluateSimilairyResult(GoldSetEvaluator.FLType.LSI, queryNumber, similarDocs);
-				}
+			if(queryNumber != 0) {
+				goldsetEvaluator.EvaluateQueryResult(GoldSetEvaluator.FLType.VSM, queryNumber, docs);  //evaluate the qury result against the gold set
+				goldsetEvaluator.EvaluateSimilairyResult(GoldSetEvaluator.FLType.VSM, queryNumber, similarDocs);  //valuating the similarity against gold set
 			}
-			resultStore.PrintLineSeperator();
-		} 
-		catch (IOException e) 
-		{
-			e.printStackTrace();					
-		}						
+		}
 		
+		if(check_lsi.isSelected() && lsiDocs != null) {
+			docs = lsiDocs;
+			resultStore.PersistLsiQueryResult(docs);
+			
+			//similar documents of the top document, found with the VSM cosine similarity
+			if(lsiSimilarDocs != null) {
+				similarDocs = lsiSimilarDocs;
+				resultStore.PersistSimilarDocResult(similarDocs);
+			}
+			
+			if(queryNumber != 0) {
+				goldsetEvaluator.EvaluateQueryResult(GoldSetEvaluator.FLType.LSI, queryNumber, docs);
+				goldsetEvaluator.EvaluateSimilairyResult(GoldSetEvaluator.FLType.LSI, queryNumber, similarDocs);
+			}
+		}
+		resultStore.PrintLineSeperator();
 	}
 	
 	private boolean validateInput(boolean checkBox)
@@ -0,0 +1,201 @@
+package featurelocation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Build artifacts by the hash of everything they are built from: the documents and the parameters of the build.
+// The same inputs find the artifacts of an earlier build instead of building them again. Every entry is a
+// directory, written under a temporary name and renamed when complete, and never changed afterwards.
+// The entries used least recently are deleted when the cache grows over its size budget.
+public class ArtifactCache
+{
+	// writes the artifacts of an entry into its directory
+	public interface Writer
+	{
+		public void write(File dir) throws IOException;
+	}
+
+	// SHA-1 of the inputs of a build
+	public static class Key
+	{
+		private final MessageDigest digest;
+
+		public Key(String kind)
+		{
+			try {
+				digest = MessageDigest.getInstance("SHA-1");
+			}
+			catch(NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+			add(kind);
+		}
+
+		public Key add(String text)
+		{
+			try {
+				byte[] bytes = text.getBytes("UTF-8");
+				add(bytes.length);
+				digest.update(bytes);
+			}
+			catch(UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+			return this;
+		}
+
+		public Key add(long value)
+		{
+			for(int shift=56; shift>=0; shift-=8) {
+				digest.update((byte)(value >>> shift));
+			}
+			return this;
+		}
+
+		public Key add(byte[] bytes, int offset, int length)
+		{
+			add(length);
+			digest.update(bytes, offset, length);
+			return this;
+		}
+
+		// hex of the hash, the key cannot be added to afterwards
+		@Override
+		public String toString()
+		{
+			StringBuilder hex = new StringBuilder(40);
+			for(byte b : digest.digest()) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		}
+	}
+
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private final File rootDir;
+	private volatile long sizeBudget;  // bytes of all entries
+
+	public ArtifactCache(File rootDir, long sizeBudget)
+	{
+		this.rootDir = rootDir;
+		this.sizeBudget = sizeBudget;
+	}
+
+	// cache of the workspace, 1 GB
+	public static ArtifactCache defaultCache() {
+		return new ArtifactCache(new File("temp" + File.separator + "cache"), 1L << 30);
+	}
+
+	public void setSizeBudget(long sizeBudget) {
+		this.sizeBudget = sizeBudget;
+	}
+
+	// directory of the entry, null if the cache has none
+	public synchronized File get(String key)
+	{
+		File dir = new File(rootDir, key);
+		if(!dir.isDirectory())
+			return null;
+
+		dir.setLastModified(System.currentTimeMillis());  //recently used
+		return dir;
+	}
+
+	// Writes the entry and returns its directory, the entry already in the cache if an other build added it first.
+	// Entries over the size budget are deleted afterwards, never this one.
+	public File put(String key, Writer writer) throws IOException
+	{
+		File dir = new File(rootDir, key);
+		File tempDir = new File(rootDir, key + "-" + System.nanoTime() + TEMP_SUFFIX);
+		if(!tempDir.mkdirs())
+			throw new IOException("Cannot create " + tempDir);
+
+		try {
+			writer.write(tempDir);
+
+			synchronized(this) {
+				if(!dir.isDirectory())
+					Files.move(tempDir.toPath(), dir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+				dir.setLastModified(System.currentTimeMillis());
+				evict(dir);
+			}
+		}
+		finally {
+			if(tempDir.exists())
+				deleteDirectory(tempDir);  //failed, or an other build was first
+		}
+		return dir;
+	}
+
+	// deletes the entries used least recently until the cache fits its budget
+	private void evict(File keep)
+	{
+		File[] entries = rootDir.listFiles(file -> file.isDirectory() && !file.getName().endsWith(TEMP_SUFFIX));
+		if(entries == null)
+			return;
+
+		long[] sizes = new long[entries.length];
+		long total = 0;
+		for(int i=0; i<entries.length; ++i) {
+			sizes[i] = size(entries[i]);
+			total += sizes[i];
+		}
+
+		Integer[] order = new Integer[entries.length];
+		for(int i=0; i<order.length; ++i) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (i1, i2) -> Long.compare(entries[i1].lastModified(), entries[i2].lastModified()));
+
+		List<String> evicted = new ArrayList<String>();
+		for(int i : order) {
+			if(total <= sizeBudget)
+				break;
+			if(entries[i].equals(keep))
+				continue;
+
+			deleteDirectory(entries[i]);
+			total -= sizes[i];
+			evicted.add(entries[i].getName());
+		}
+
+		if(!evicted.isEmpty())
+			System.out.println("Artifact cache: evicted " + evicted.size() + " entries, " + total / (1024 * 1024) + " MB kept");
+	}
+
+	private static long size(File file)
+	{
+		File[] files = file.listFiles();
+		if(files == null)
+			return file.length();
+
+		long size = 0;
+		for(File child : files) {
+			size += size(child);
+		}
+		return size;
+	}
+
+	private static void deleteDirectory(File dir)
+	{
+		File[] files = dir.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				if(file.isDirectory())
+					deleteDirectory(file);
+				else
+					file.delete();  //a file still mapped stays on windows until the exit
+			}
+		}
+		dir.delete();
+	}
+}
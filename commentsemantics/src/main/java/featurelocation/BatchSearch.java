@@ -0,0 +1,67 @@
+package featurelocation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Runs a batch of queries against one FL technique on a thread pool. The techniques share their index
+// between the queries, so the queries only compete for the CPU.
+public class BatchSearch
+{
+	public interface QuerySearch
+	{
+		List<String> search(String query) throws IOException;
+	}
+
+	private int threadCount = 1;
+
+	public void setThreadCount(int threadCount) {
+		this.threadCount = Math.max(1, threadCount);
+	}
+
+	// Results of the queries in the order of the given map, query id : documents.
+	// A query that failed has no result.
+	public Map<Integer, List<String>> search(Map<Integer, String> queries, QuerySearch querySearch)
+	{
+		Map<Integer, List<String>> results = new LinkedHashMap<Integer, List<String>>();
+		if(queries.isEmpty())
+			return results;
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadCount, queries.size()));
+
+		try {
+			List<Integer> queryIds = new ArrayList<Integer>();
+			List<Future<List<String>>> futures = new ArrayList<Future<List<String>>>();
+
+			for(Map.Entry<Integer, String> entry : queries.entrySet()) {
+				String query = entry.getValue();
+
+				queryIds.add(entry.getKey());
+				futures.add(executor.submit(() -> querySearch.search(query)));
+			}
+
+			for(int i=0; i<futures.size(); ++i) {
+				try {
+					results.put(queryIds.get(i), futures.get(i).get());
+				}
+				catch(ExecutionException e) {
+					e.getCause().printStackTrace();
+				}
+			}
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		return results;
+	}
+}
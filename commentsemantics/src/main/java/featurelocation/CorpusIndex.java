@@ -0,0 +1,347 @@
+package featurelocation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.RAMDirectory;
+
+// The one Lucene index of the documents, written once and read by the VSM query search and the
+// document similarity. Documents without tokens are indexed for the similarity statistics, the query
+// searcher leaves them out of its statistics as they were never part of the query index.
+// A document with comment sources indexes every source in a field of its own in place of the data field,
+// the search options then choose the fields at query time.
+// Documents are prepared and removed from one thread, the ingestion thread of the index, and reset or
+// openWorkspace never run along with them. Searches and the similarity are safe from any thread.
+public class CorpusIndex implements FeatureLocation
+{
+	// FULL indexes the data with positions and offsets and keeps term vectors of them, the file name is tokenized.
+	// LEAN indexes only document frequencies and term frequencies, keeps a forward entry of the terms in place of
+	// the term vectors, stores the file name as it is and merges the index into one segment on the commit of a full
+	// build. Later commits only purge the removed documents.
+	// Ranking and similarity are the same, phrase queries need the positions of the FULL profile.
+	public enum Profile {FULL, LEAN}
+	
+	private Profile profile = Profile.FULL;
+	
+	private StandardAnalyzer standardAnalyzer = null;
+	private Directory directory = null;
+	private IndexWriter writer = null;
+	private FieldType fieldType = null;
+	private FieldType dataFieldType = null;
+	private File indexDir = null;  // on-disk index directory, the index is kept in memory if not set
+
+	// searcher of the last commit shared by all queries, refreshed when a commit changed the index
+	private SearcherManager searcherManager = null;
+	private volatile boolean indexChanged = true;  // documents added or removed since the last commit
+	private volatile long generation = 0;          // changes with every document added or removed
+	private boolean built = false;                 // the documents of a full build are committed, later commits are incremental
+	
+	private final AtomicLong indexTime = new AtomicLong();  // nanoseconds spent adding, removing and committing documents since the writer was opened
+
+	private static final Term QUERY_DOCUMENT = new Term("querydoc", "true");  // documents with tokens
+	static final String SOURCE_FIELD = "source";  // comment sources with tokens of a document
+
+	public CorpusIndex()
+	{
+		reset();
+	}
+
+	// used from the next reset or workspace opened
+	public void setProfile(Profile profile) {
+		this.profile = profile;
+	}
+	
+	public Profile getProfile() {
+		return profile;
+	}
+
+	@Override
+	public void prepareDocument(String fileName, TermDocument data)
+	{
+		long startTime = System.nanoTime();
+		
+		Document document = new Document();
+		
+		if(profile == Profile.FULL)
+			document.add(new Field("filename", fileName, fieldType));
+		else
+			document.add(new StoredField("filename", fileName));
+		
+		Map<String, TermDocument> sources = data.getSources();
+		if(sources == null) {
+			addDataField(document, "data", data);
+		}
+		else {
+			for(Map.Entry<String, TermDocument> source : sources.entrySet()) {
+				addDataField(document, source.getKey(), source.getValue());
+				document.add(new StringField(SOURCE_FIELD, source.getKey(), Field.Store.NO));
+				document.add(new NumericDocValuesField(lengthField(source.getKey()), indexLength(source.getValue())));
+			}
+		}
+		
+		document.add(new StringField("fileid", fileName, Field.Store.NO));  //untokenized key to remove the document
+
+		boolean hasTokens = (sources == null) ? !data.isEmpty() : !sources.isEmpty();
+		if(hasTokens)
+			document.add(new StringField(QUERY_DOCUMENT.field(), QUERY_DOCUMENT.text(), Field.Store.NO));
+
+		try {
+			writer.addDocument(document);
+			indexChanged();
+
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+		indexTime.addAndGet(System.nanoTime() - startTime);
+	}
+
+	// terms of the standard analyzer, a lean index keeps the forward entry of the field in place of its term vectors
+	private void addDataField(Document document, String field, TermDocument data)
+	{
+		if(profile == Profile.LEAN)
+			document.add(new StoredField(DocumentVectors.forwardField(field), DocumentVectors.forwardEntry(data)));
+		
+		document.add(new Field(field, data.tokenStream(true), dataFieldType));
+	}
+
+	// doc values of the indexed terms of a comment source field, the query search adds the lengths of the fields
+	// it searches for the length norm of the joined fields
+	static String lengthField(String field) {
+		return field + "length";
+	}
+	
+	// terms the token stream of the document gives, without the stop words
+	private static int indexLength(TermDocument data)
+	{
+		int length = 0;
+		for(int termId : data.getTermIds()) {
+			if(!data.getDictionary().isStopWord(termId))
+				++length;
+		}
+		return length;
+	}
+
+	@Override
+	public void removeDocument(String fileName)
+	{
+		long startTime = System.nanoTime();
+		
+		try {
+			writer.deleteDocuments(new Term("fileid", fileName));
+			indexChanged();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+		indexTime.addAndGet(System.nanoTime() - startTime);
+	}
+
+	@Override
+	public boolean openWorkspace(File workspaceDir)
+	{
+		indexDir = (workspaceDir != null) ? new File(workspaceDir, "corpus") : null;
+
+		try {
+			if(indexDir != null) {
+				boolean indexExists;
+				try(Directory existing = FSDirectory.open(indexDir.toPath())) {
+					indexExists = DirectoryReader.indexExists(existing);
+				}
+
+				if(indexExists) {
+					openWriter(OpenMode.APPEND);  //continue with the index of an earlier run
+					return true;
+				}
+			}
+		}
+		catch(IOException e) {
+			e.printStackTrace();
+		}
+
+		reset();
+		return false;
+	}
+
+	@Override
+	public synchronized void commit()
+	{
+		long startTime = System.nanoTime();
+		
+		try {
+			indexChanged = false;
+			if(profile == Profile.LEAN && !built)
+				writer.forceMerge(1);  //one segment after a full build
+			else
+				writer.forceMergeDeletes();  //purge removed documents so the term statistics match a full rebuild
+			writer.commit();
+			built = true;
+
+			if(searcherManager == null)
+				searcherManager = new SearcherManager(directory, new QuerySearcherFactory());
+			else
+				searcherManager.maybeRefreshBlocking();
+		}
+		catch(IOException e) {
+			e.printStackTrace();
+		}
+		
+		indexTime.addAndGet(System.nanoTime() - startTime);
+	}
+
+	@Override
+	public void reset()
+	{
+		try {
+			openWriter(OpenMode.CREATE);
+		}
+		catch(IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void indexChanged()
+	{
+		indexChanged = true;
+		++generation;
+	}
+
+	private synchronized void openWriter(OpenMode openMode) throws IOException
+	{
+		if(searcherManager != null)
+			searcherManager.close();
+		searcherManager = null;
+		indexChanged();
+		indexTime.set(0);
+		built = (openMode == OpenMode.APPEND);  //the index of an earlier run
+
+		if(writer != null)
+			writer.close();
+		if(directory != null)
+			directory.close();  //the writer does not close its directory
+
+		standardAnalyzer = new StandardAnalyzer();
+		directory = (indexDir != null) ? FSDirectory.open(indexDir.toPath()) : new RAMDirectory();
+
+		IndexWriterConfig config = new IndexWriterConfig(standardAnalyzer);
+		config.setOpenMode(openMode);
+		TieredMergePolicy mergePolicy = new TieredMergePolicy();
+		mergePolicy.setForceMergeDeletesPctAllowed(0);  //removed documents are always purged on commit
+		config.setMergePolicy(mergePolicy);
+		writer = new IndexWriter(directory, config);
+
+		//initialize field
+		fieldType = new FieldType();
+		fieldType.setStoreTermVectors(true);
+		fieldType.setTokenized(true);
+		fieldType.setStored(true);
+		fieldType.setStoreTermVectorOffsets(true);
+		fieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+
+		//documents are indexed from their term ids, the terms are not stored
+		dataFieldType = new FieldType(fieldType);
+		dataFieldType.setStored(false);
+		
+		if(profile == Profile.LEAN) {
+			dataFieldType.setStoreTermVectors(false);
+			dataFieldType.setStoreTermVectorOffsets(false);
+			dataFieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS);
+		}
+	}
+	
+	// bytes of the index files, the committed index if nothing changed since the last commit
+	public synchronized long getIndexSize()
+	{
+		long size = 0;
+		try {
+			for(String file : directory.listAll()) {
+				size += directory.fileLength(file);
+			}
+		}
+		catch(IOException e) {
+			e.printStackTrace();
+		}
+		return size;
+	}
+	
+	// nanoseconds spent adding, removing and committing documents since the index was reset or opened
+	public long getIndexTime() {
+		return indexTime.get();
+	}
+
+	// changes whenever a document is added or removed, views keep what they derive from the index per generation
+	public long getGeneration() {
+		return generation;
+	}
+
+	// Searcher of the committed index, commits first if documents were added or removed.
+	// Every acquired searcher must be released.
+	public synchronized IndexSearcher acquireSearcher() throws IOException
+	{
+		return getSearcherManager().acquire();
+	}
+
+	// same as SearcherManager.release, also after a reset replaced the manager
+	public void releaseSearcher(IndexSearcher searcher) throws IOException
+	{
+		searcher.getIndexReader().decRef();
+	}
+
+	private synchronized SearcherManager getSearcherManager() throws IOException
+	{
+		if(indexChanged || searcherManager == null)
+			commit();
+
+		if(searcherManager == null)
+			throw new IOException("Index could not be committed");
+
+		return searcherManager;
+	}
+
+	// Query searches see only the documents with tokens in their statistics, like the former VSM index.
+	// The similarity reads the index through the reader and counts every document.
+	private static class QuerySearcherFactory extends SearcherFactory
+	{
+		@Override
+		public IndexSearcher newSearcher(IndexReader reader) throws IOException
+		{
+			final int queryDocCount = reader.docFreq(QUERY_DOCUMENT);
+
+			return new IndexSearcher(reader) {
+				@Override
+				public CollectionStatistics collectionStatistics(String field) throws IOException
+				{
+					CollectionStatistics statistics = super.collectionStatistics(field);
+					if(field.equals("filename") || field.equals("fileid") || field.equals(QUERY_DOCUMENT.field()) || field.equals(SOURCE_FIELD))
+						return statistics;  //the data field or the fields of the comment sources only
+
+					return new CollectionStatistics(field, queryDocCount, statistics.docCount(),
+							statistics.sumTotalTermFreq(), statistics.sumDocFreq());
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,243 @@
+package featurelocation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.similarities.DefaultSimilarity;
+import org.apache.lucene.search.similarities.TFIDFSimilarity;
+import org.apache.lucene.util.BytesRef;
+
+// Sparse tf-idf vectors of the documents of an index, built once from the term vectors or the forward
+// entries a lean index stores in their place. Every vector
+// holds the ids of its terms in ascending order with their weights, and its length.
+// The weights and cosines are the same as those of dense vectors indexed by term id.
+public class DocumentVectors
+{
+	private final String[] fileNames;
+	private final int[][] termIds;
+	private final float[][] weights;
+	private final double[] norms;
+	private final Map<String, Integer> docIds = new TreeMap<String, Integer>(String.CASE_INSENSITIVE_ORDER);  // file name : last document
+
+	private DocumentVectors(int docCount)
+	{
+		fileNames = new String[docCount];
+		termIds = new int[docCount][];
+		weights = new float[docCount][];
+		norms = new double[docCount];
+	}
+
+	public static DocumentVectors build(IndexReader reader, String field, TermDictionary termDictionary) throws IOException
+	{
+		return build(reader, Collections.singletonList(field), termDictionary);
+	}
+
+	// Vectors of the fields as one field: the frequencies of a term are added over the fields of a document
+	// and its document frequency counts the documents with the term in any of them, which gives the vectors
+	// of an index of the joined fields.
+	public static DocumentVectors build(IndexReader reader, List<String> fields, TermDictionary termDictionary) throws IOException
+	{
+		TFIDFSimilarity similarity = new DefaultSimilarity();
+		int docCount = reader.numDocs();
+
+		// term ids in the order of the index terms, adds the terms of an index opened from an earlier run
+		for(String field : fields) {
+			Terms indexTerms = MultiFields.getTerms(reader, field);
+			if(indexTerms != null) {
+				TermsEnum terms = indexTerms.iterator(null);
+				while(terms.next() != null) {
+					termDictionary.id(terms.term().utf8ToString());
+				}
+			}
+		}
+
+		DocumentVectors vectors = new DocumentVectors(docCount);
+		long[][] frequencies = new long[docCount][];
+		int[] docFreq = new int[0];  // documents of every term, by term id
+
+		for(int doc=0; doc<docCount; ++doc) {
+			Document document = reader.document(doc);
+			vectors.fileNames[doc] = document.getField("filename").stringValue();
+			vectors.docIds.put(vectors.fileNames[doc], doc);
+
+			Map<Integer, Long> docTerms = new TreeMap<Integer, Long>();  // term id : frequency in all the fields
+			for(String field : fields) {
+				readTerms(reader, doc, document, field, termDictionary, docTerms);
+			}
+
+			int[] ids = new int[docTerms.size()];
+			long[] docFrequencies = new long[docTerms.size()];
+			int i = 0;
+
+			for(Map.Entry<Integer, Long> term : docTerms.entrySet()) {
+				ids[i] = term.getKey();
+				docFrequencies[i++] = term.getValue();
+
+				if(term.getKey() >= docFreq.length)
+					docFreq = Arrays.copyOf(docFreq, Math.max(term.getKey() + 1, docFreq.length * 2));
+				++docFreq[term.getKey()];
+			}
+
+			vectors.termIds[doc] = ids;
+			frequencies[doc] = docFrequencies;
+		}
+
+		float[] idf = new float[docFreq.length];
+		for(int id=0; id<idf.length; ++id) {
+			if(docFreq[id] > 0)
+				idf[id] = similarity.idf(docFreq[id], docCount);
+		}
+
+		for(int doc=0; doc<docCount; ++doc) {
+			int[] ids = vectors.termIds[doc];
+			float[] docWeights = new float[ids.length];
+			double sum = 0;
+
+			for(int i=0; i<ids.length; ++i) {
+				docWeights[i] = idf[ids[i]] * similarity.tf(frequencies[doc][i]);
+				sum += (double)docWeights[i] * docWeights[i];
+			}
+
+			vectors.weights[doc] = docWeights;
+			vectors.norms[doc] = Math.sqrt(sum);
+		}
+
+		return vectors;
+	}
+
+	// adds the terms and frequencies of a field from its term vector, or from the forward entry if the index has no term vectors
+	private static void readTerms(IndexReader reader, int doc, Document document, String field, TermDictionary termDictionary,
+			Map<Integer, Long> docTerms) throws IOException
+	{
+		List<String> terms = new ArrayList<String>();
+		List<Long> frequencies = new ArrayList<Long>();
+
+		Terms vector = reader.getTermVector(doc, field);
+		BytesRef forwardEntry = document.getBinaryValue(forwardField(field));
+
+		if(vector != null) {
+			TermsEnum vectorTerms = vector.iterator(null);
+			while(vectorTerms.next() != null) {
+				terms.add(vectorTerms.term().utf8ToString());
+				frequencies.add(vectorTerms.totalTermFreq());
+			}
+		}
+		else if(forwardEntry != null) {
+			readForwardEntry(forwardEntry, terms, frequencies);
+		}
+
+		for(int n=0; n<terms.size(); ++n) {
+			docTerms.merge(termDictionary.id(terms.get(n)), frequencies.get(n), Long::sum);
+		}
+	}
+
+	// stored field of the forward entries of a field
+	public static String forwardField(String field) {
+		return field + "terms";
+	}
+
+	// Forward entry of a document: its terms without the stop words and their frequencies, stored in
+	// place of a term vector. Terms are kept as text since the term ids are not kept with the index.
+	public static BytesRef forwardEntry(TermDocument data)
+	{
+		TermDictionary dictionary = data.getDictionary();
+
+		Map<Integer, Integer> frequencies = new TreeMap<Integer, Integer>();  // term id : frequency
+		for(int termId : data.getTermIds()) {
+			if(!dictionary.isStopWord(termId))
+				frequencies.merge(termId, 1, Integer::sum);
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(frequencies.size());
+			for(Map.Entry<Integer, Integer> entry : frequencies.entrySet()) {
+				out.writeUTF(dictionary.term(entry.getKey()));
+				out.writeInt(entry.getValue());
+			}
+		}
+		catch(IOException e) {
+			throw new RuntimeException(e);
+		}
+		return new BytesRef(bytes.toByteArray());
+	}
+
+	// terms and frequencies of a forward entry
+	static void readForwardEntry(BytesRef forwardEntry, List<String> terms, List<Long> frequencies) throws IOException
+	{
+		try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(forwardEntry.bytes, forwardEntry.offset, forwardEntry.length))) {
+			int count = in.readInt();
+			for(int i=0; i<count; ++i) {
+				terms.add(in.readUTF());
+				frequencies.add((long)in.readInt());
+			}
+		}
+	}
+
+	public int size() {
+		return fileNames.length;
+	}
+
+	public String getFileName(int doc) {
+		return fileNames[doc];
+	}
+
+	// last document with the file name ignoring case, -1 if there is none
+	public int getDocId(String fileName)
+	{
+		Integer doc = docIds.get(fileName);
+		return (doc != null) ? doc : -1;
+	}
+
+	// cosine similarity of two documents, NaN if one of them has no terms
+	public double cosine(int doc1, int doc2)
+	{
+		if(norms[doc1] == 0 || norms[doc2] == 0)
+			return Double.NaN;
+
+		return dotProduct(doc1, doc2) / (norms[doc1] * norms[doc2]);
+	}
+
+	// merge of the two term id lists, the products are added in term id order
+	private double dotProduct(int doc1, int doc2)
+	{
+		int[] ids1 = termIds[doc1];
+		int[] ids2 = termIds[doc2];
+		float[] weights1 = weights[doc1];
+		float[] weights2 = weights[doc2];
+
+		double dot = 0;
+		int i = 0;
+		int j = 0;
+
+		while(i < ids1.length && j < ids2.length) {
+			if(ids1[i] < ids2[j]) {
+				++i;
+			}
+			else if(ids1[i] > ids2[j]) {
+				++j;
+			}
+			else {
+				dot += (double)weights1[i] * weights2[j];
+				++i;
+				++j;
+			}
+		}
+
+		return dot;
+	}
+}
@@ -1,10 +1,19 @@
 package featurelocation;
 
-import java.util.List;
+import java.io.File;
 
 public interface FeatureLocation 
 {	
-	public void prepareDocument(String fileName, List<String> data);
+	public void prepareDocument(String fileName, TermDocument data);
+	
+	public void removeDocument(String fileName);
+	
+	// make prepared and removed documents durable
+	public void commit();
+	
+	// keep the documents in the given workspace directory, null keeps them in memory.
+	// Returns true if the workspace already holds the documents of an earlier run.
+	public boolean openWorkspace(File workspaceDir);
 	
 	public void reset();
 }
@@ -0,0 +1,38 @@
+package featurelocation;
+
+import java.io.IOException;
+import java.util.List;
+
+// LSI technique: documents are prepared as for every FL technique, the semantic space is built from them
+// once before the queries. Queries may run from several threads at once.
+public interface LsiEngine extends FeatureLocation
+{
+	// builds the semantic space of the current documents, nothing to do if they did not change.
+	// Changed documents are folded into the space of the last training until the drift threshold is passed.
+	public void buildSemanticVectors();
+
+	// documents prepared or removed since the last training, as a fraction of the trained documents,
+	// up to which the changes are folded in. 0 trains on every change.
+	public void setDriftThreshold(double driftThreshold);
+
+	// spaces of earlier trainings, a training of the same documents and parameters reads its space from the cache.
+	// null trains every time.
+	public void setArtifactCache(ArtifactCache artifactCache);
+
+	public List<String> LsiQuerySearch(String query) throws IOException;
+
+	// milliseconds of the last build
+	public double getBuildTime();
+
+	// bytes of the semantic space held in memory
+	public long getModelSize();
+
+	// average milliseconds of the queries so far
+	public double getAverageQueryLatency();
+
+	// milliseconds a query should take at most, slower queries are reported
+	public double getLatencyTarget();
+
+	// queries so far that took longer than the latency target
+	public int getSlowQueryCount();
+}
@@ -1,166 +1,547 @@
 package featurelocation;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import pitt.search.lucene.IndexFilePositions;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.util.CharArraySet;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+import pitt.search.semanticvectors.CompoundVectorBuilder;
 import pitt.search.semanticvectors.DocVectors;
 import pitt.search.semanticvectors.FlagConfig;
 import pitt.search.semanticvectors.LuceneUtils;
-import pitt.search.semanticvectors.Search;
-import pitt.search.semanticvectors.SearchResult;
 import pitt.search.semanticvectors.TermVectorsFromLucene;
 import pitt.search.semanticvectors.VectorStore;
 import pitt.search.semanticvectors.VectorStoreRAM;
 import pitt.search.semanticvectors.VectorStoreWriter;
+import pitt.search.semanticvectors.vectors.Vector;
+import pitt.search.semanticvectors.vectors.VectorFactory;
 
-public class LsiFeatureLocation implements FeatureLocation 
+// The documents are indexed from the token streams of the file parser into one positional index, laid out
+// like the index IndexFilePositions builds from document files: the document path and the contents with
+// term vectors and positions. The term and document vectors are trained from that index and kept in memory,
+// queries are answered from them without opening any file. Once trained, changed documents are folded into
+// the space with the trained term vectors until the changes since the training pass the drift threshold.
+// With an artifact cache, a training of the same documents and parameters as an earlier one reads its vectors.
+// Engines share no state, each keeps its index in its own workspace or temp directory; a workspace belongs to one
+// engine at a time. Documents change from one thread while queries run from any thread.
+public class LsiFeatureLocation implements LsiEngine
 {
 	private final int QUERYDOC_COUNT = 50;
-	
-	static String DOCINDEX_PATH = "temp\\docindex";
-	static String DOCFILE_PATH  = "temp\\docfiles";
-	static String TERM_VECTOR   = "temp\\termvectors.bin";
-	static String DOC_VECTOR    = "temp\\docvectors.bin";	
-	
+	private final int DIMENSION = 200;
+
+	private static final String PATH_FIELD     = "path";      // document id of the semantic vectors
+	private static final String CONTENTS_FIELD = "contents";  // field the semantic vectors are trained from
+
+	private static final int SPACE_FORMAT = 2;                          // change when the cached files or the training change
+	private static final String TERM_VECTOR_FILE = "termvectors.bin";   // files of a cached space
+	private static final String DOC_VECTOR_FILE = "docvectors.bin";
+	private static final String DOCUMENT_FILE = "documents.txt";        // file names in the order of the training
+
+	private IndexWriter writer = null;
+	private FieldType contentsType = null;
+	private File indexDir = null;            // positional index, in the workspace or a temp directory
+	private File workspaceDir = null;        // keeps the index for later runs, temp directory if not set
+
+	private volatile boolean vectorsCurrent = false;  // semantic vectors are built from the current documents
+	private volatile SemanticSpace space = null;     // trained vectors of the last build
+	// Changes since the last build by file name. Files of several packages share a name, the index keeps each
+	// of them and removing a name removes all, so the changes of a name are whether it was removed and the term
+	// frequencies of every file of the name prepared afterwards.
+	private final Map<String, List<Map<String, Integer>>> changedDocuments = new HashMap<String, List<Map<String, Integer>>>();
+	private final Set<String> removedDocuments = new HashSet<String>();  // file names removed since the last build
+	private final Set<String> driftDocuments = new HashSet<String>();  // prepared or removed since the last training
+	private double driftThreshold = 0.1;             // changed documents, relative to the trained ones, that are folded in
+
+	private ArtifactCache artifactCache = null;      // spaces of earlier trainings, not cached if not set
+	private boolean cachedBuild = false;             // last training read its vectors from the cache
+
+	private volatile long buildTime = 0;             // nanoseconds of the last build
+	private volatile double latencyTarget = 50;      // milliseconds a query should take at most
+	private final AtomicLong queryTime = new AtomicLong();  // nanoseconds of all queries
+	private final AtomicInteger queryCount = new AtomicInteger();
+	private final AtomicInteger slowQueryCount = new AtomicInteger();  // queries over the latency target
+
+	// Term and document vectors of one build, never changed after the build. The space holds no reader of
+	// the index: the training weighs no term globally, so the fold-in and the queries need no statistics of it.
+	private static class SemanticSpace
+	{
+		private final FlagConfig flagConfig;
+		private final VectorStore termVectors;
+		private final String[] fileNames;  // a name once for every file of the name
+		private final Vector[] docVectors;
+		private final int trainedDocCount;  // documents of the training
+
+		// a trained space, the documents in the order of the index
+		private SemanticSpace(FlagConfig flagConfig, VectorStore termVectors, String[] fileNames, Vector[] docVectors)
+		{
+			this.flagConfig = flagConfig;
+			this.termVectors = termVectors;
+			this.fileNames = fileNames;
+			this.docVectors = docVectors;
+			trainedDocCount = fileNames.length;
+		}
+
+		// the trained space with other documents
+		private SemanticSpace(SemanticSpace space, String[] fileNames, Vector[] docVectors)
+		{
+			flagConfig = space.flagConfig;
+			termVectors = space.termVectors;
+			this.fileNames = fileNames;
+			this.docVectors = docVectors;
+			trainedDocCount = space.trainedDocCount;
+		}
+	}
+
 	public LsiFeatureLocation()
 	{
 		reset();
 	}
-	
+
 	@Override
-	public void prepareDocument(String fileName, List<String> data) 
-	{		
-		//create documents for indexing
-		String str =  String.join(" ", data);
-	    BufferedWriter writer;
+	public void prepareDocument(String fileName, TermDocument data)
+	{
+		Document document = new Document();
+		document.add(new StringField(PATH_FIELD, fileName, Field.Store.YES));  //stored for the vectors, indexed to remove the document
+		document.add(new Field(CONTENTS_FIELD, data.tokenStream(false), contentsType));  //all terms, the index keeps the stop words
+
 		try {
-			writer = new BufferedWriter(new FileWriter(DOCFILE_PATH + "\\" +  fileName));
-			writer.write(str);		    
-		    writer.close();
+			writer.addDocument(document);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
-		
+
+		//term frequencies for the fold-in
+		Map<String, Integer> frequencies = new HashMap<String, Integer>();
+		for(int termId : data.getTermIds()) {
+			frequencies.merge(data.getDictionary().term(termId), 1, Integer::sum);
+		}
+
+		synchronized(this) {
+			documentChanged(fileName).add(frequencies);
+		}
 	}
 
 	@Override
-	public void reset() 
-	{		
+	public void removeDocument(String fileName)
+	{
 		try {
-			
-			Integer rand = (int) ((Math.random()) * 100000);
-			String randomName = rand.toString();
-			
-			//clean up doc directory
-			File dataDir = new File(DOCFILE_PATH);			
-			String[] entries = dataDir.list();
-			
-			if (entries != null) {
-				for (String s : entries) {
-					File currentFile = new File(dataDir.getPath(), s);
-					currentFile.delete();
+			writer.deleteDocuments(new Term(PATH_FIELD, fileName));  //every file of the name
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		synchronized(this) {
+			documentChanged(fileName).clear();
+			removedDocuments.add(fileName);
+		}
+	}
+
+	// term frequencies of the files of the name prepared since the last build
+	private List<Map<String, Integer>> documentChanged(String fileName)
+	{
+		vectorsCurrent = false;
+		driftDocuments.add(fileName);
+		return changedDocuments.computeIfAbsent(fileName, name -> new ArrayList<Map<String, Integer>>());
+	}
+
+	@Override
+	public void commit()
+	{
+		try {
+			writer.commit();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public boolean openWorkspace(File workspaceDir)
+	{
+		this.workspaceDir = workspaceDir;
+		vectorsCurrent = false;
+
+		if(workspaceDir != null) {
+			try {
+				boolean indexExists;
+				try(Directory existing = FSDirectory.open(workspaceIndexDir().toPath())) {
+					indexExists = DirectoryReader.indexExists(existing);
 				}
-				dataDir.delete();
-			}			
-			
-			//create doc dir
-			DOCFILE_PATH = "temp\\doc" + randomName;
-			File docDir = new File(DOCFILE_PATH);
-			if (!docDir.exists()) 
-			{
-				docDir.mkdirs();
-			}
-		
-			// clean up index directory
-			File index = new File(DOCINDEX_PATH);		
-			String[] files = index.list();
-			
-			if (files != null) {
-				for (String file : files) {
-					File currentFile = new File(index.getPath(), file);
-					currentFile.delete();
+
+				if(indexExists) {
+					openWriter(workspaceIndexDir(), OpenMode.APPEND);
+					return true;  //documents of an earlier run, the vectors are built again on the first query
 				}
-				index.delete();
 			}
-		
-			// create Lucene Index dir			
-			DOCINDEX_PATH = "temp\\index" + randomName;
-
-			// delete doc vec and term vec
-			File docVec = new File(DOC_VECTOR);
-			if (docVec.isFile()) {
-				docVec.delete();
+			catch(IOException e) {
+				e.printStackTrace();
 			}
+		}
 
-			File termVec = new File(TERM_VECTOR);
-			if (termVec.isFile()) {
-				termVec.delete();
-			}
-			
-			//new term and doc vectors
-			TERM_VECTOR = "temp\\term" + randomName + ".bin";
-			DOC_VECTOR  = "temp\\doc" + randomName + ".bin";
+		reset();
+		return false;
+	}
 
-		} catch (Exception e) {
+	private File workspaceIndexDir() {
+		return new File(workspaceDir, "lsi");
+	}
+
+	@Override
+	public void reset()
+	{
+		try {
+			if(workspaceDir != null)
+				openWriter(workspaceIndexDir(), OpenMode.CREATE);
+			else
+				openWriter(Files.createTempDirectory("lsiindex").toFile(), OpenMode.CREATE);
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
-		
 	}
-	
-	
-	public List<String> LsiQuerySearch(String query) throws IOException 
+
+	private void openWriter(File dir, OpenMode openMode) throws IOException
+	{
+		vectorsCurrent = false;
+		space = null;
+		synchronized(this) {
+			changedDocuments.clear();
+			removedDocuments.clear();
+			driftDocuments.clear();
+		}
+
+		if(writer != null) {
+			Directory directory = writer.getDirectory();
+			writer.close();
+			directory.close();  //the writer does not close its directory
+		}
+
+		//the temp index of the previous documents is not needed any more
+		if(indexDir != null && workspaceDir == null && !indexDir.equals(dir))
+			deleteDirectory(indexDir);
+
+		indexDir = dir;
+
+		IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer(CharArraySet.EMPTY_SET));
+		config.setOpenMode(openMode);
+		TieredMergePolicy mergePolicy = new TieredMergePolicy();
+		mergePolicy.setForceMergeDeletesPctAllowed(0);  //a training purges every removed document
+		config.setMergePolicy(mergePolicy);
+		writer = new IndexWriter(FSDirectory.open(indexDir.toPath()), config);
+
+		//contents field as IndexFilePositions indexes it
+		contentsType = new FieldType();
+		contentsType.setTokenized(true);
+		contentsType.setStoreTermVectors(true);
+		contentsType.setStoreTermVectorPositions(true);
+		contentsType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
+	}
+
+	private static void deleteDirectory(File dir)
+	{
+		String[] files = dir.list();
+
+		if (files != null) {
+			for (String file : files) {
+				new File(dir, file).delete();
+			}
+		}
+		dir.delete();
+	}
+
+	// Safe to call from several threads at once, the query sees the vectors of the last build
+	@Override
+	public List<String> LsiQuerySearch(String query) throws IOException
 	{
 		List<String> docs = new ArrayList<String>();
 
-		try 
-		{	
+		long startTime = System.nanoTime();
+
+		try
+		{
 			Logger logger = Logger.getLogger("VerbatimLogger");
 			logger.setLevel(Level.SEVERE);
-			
-			String Args = new String("-queryvectorfile ") + TERM_VECTOR;
-			Args += " -searchvectorfile " + DOC_VECTOR;
-			Args += " -luceneindexpath " + DOCINDEX_PATH;
-			Args += " -numsearchresults " + QUERYDOC_COUNT + " " + query;
-			String[] searchArgs = Args.split("\\s+");
-
-			List<SearchResult> testresults = Search.runSearch(FlagConfig.getFlagConfig(searchArgs));
-			for (SearchResult result : testresults) {
-				String fullPath = (String) result.getObjectVector().getObject();
-				String fileName = fullPath.substring(fullPath.lastIndexOf("\\") + 1);
-				
-				System.out.println("score:" + result.getScore() + "  file:" + fileName);
-				docs.add(fileName);
+
+			SemanticSpace space = this.space;
+			if(space == null)
+				throw new IllegalStateException("Semantic vectors are not built");
+
+			//the query terms as Search.runSearch takes them from the command line
+			String[] queryTerms = query.trim().split("\\s+");
+
+			//sum of the term vectors, as the cosine searcher of Search.runSearch builds it without term weights
+			Vector queryVector = CompoundVectorBuilder.getQueryVector(space.termVectors, null, space.flagConfig, queryTerms);
+			if(queryVector.isZeroVector())
+				throw new IllegalArgumentException("No vector for the query terms");
+
+			for (int doc : nearestDocuments(space, queryVector)) {
+				System.out.println("score:" + queryVector.measureOverlap(space.docVectors[doc]) + "  file:" + space.fileNames[doc]);
+				docs.add(space.fileNames[doc]);
 			}
 
 		} catch (Exception e) {
 			System.out.println("Exception in Query! " + e.getMessage());
 		}
 
+		long elapsed = System.nanoTime() - startTime;
+		queryTime.addAndGet(elapsed);
+		queryCount.incrementAndGet();
+
+		if(elapsed / 1000000.0 > latencyTarget) {
+			slowQueryCount.incrementAndGet();
+			System.out.println("LSI query over the latency target: " + elapsed / 1000000 + " ms, " + query);
+		}
+
 		return docs;
 	}
-	
-	public void buildSemanticVectors()
+
+	// the QUERYDOC_COUNT documents closest to the query vector, best first. Equal scores keep the document order.
+	private List<Integer> nearestDocuments(SemanticSpace space, Vector queryVector)
+	{
+		int count = space.docVectors.length;
+		double[] scores = new double[count];
+
+		//lowest score on top, the later document of equal scores goes first
+		PriorityQueue<Integer> nearest = new PriorityQueue<Integer>(QUERYDOC_COUNT + 1,
+				(doc1, doc2) -> (scores[doc1] != scores[doc2]) ? Double.compare(scores[doc1], scores[doc2]) : Integer.compare(doc2, doc1));
+
+		double minScore = space.flagConfig.searchresultsminscore();
+
+		for(int doc=0; doc<count; ++doc) {
+			scores[doc] = queryVector.measureOverlap(space.docVectors[doc]);
+			if(scores[doc] <= minScore)
+				continue;
+
+			nearest.add(doc);
+			if(nearest.size() > QUERYDOC_COUNT)
+				nearest.poll();
+		}
+
+		List<Integer> docs = new ArrayList<Integer>(nearest.size());
+		while(!nearest.isEmpty()) {
+			docs.add(nearest.poll());
+		}
+		Collections.reverse(docs);
+		return docs;
+	}
+
+	// milliseconds a query should take at most, slower queries are reported
+	public void setLatencyTarget(double latencyTarget) {
+		this.latencyTarget = latencyTarget;
+	}
+
+	@Override
+	public double getLatencyTarget() {
+		return latencyTarget;
+	}
+
+	@Override
+	public double getAverageQueryLatency()
+	{
+		int count = queryCount.get();
+		return (count > 0) ? queryTime.get() / 1000000.0 / count : 0;
+	}
+
+	@Override
+	public int getSlowQueryCount() {
+		return slowQueryCount.get();
+	}
+
+	@Override
+	public double getBuildTime() {
+		return buildTime / 1000000.0;
+	}
+
+	// term and document vectors of floats
+	@Override
+	public long getModelSize()
+	{
+		SemanticSpace space = this.space;
+		if(space == null)
+			return 0;
+
+		long vectorCount = space.termVectors.getNumVectors();
+		return (vectorCount + space.docVectors.length) * space.flagConfig.dimension() * 4;
+	}
+
+	@Override
+	public synchronized void buildSemanticVectors()
 	{
-		try 
+		if(vectorsCurrent)
+			return;  //no document changed since the last build
+
+		long startTime = System.nanoTime();
+		boolean foldIn = (space != null) && getDrift() <= driftThreshold;
+
+		try
 		{
-			//build position indexes from tokens
-			String indexCommand = "-luceneindexpath " + DOCINDEX_PATH + " " + DOCFILE_PATH;
-			IndexFilePositions.main(indexCommand.split("\\s+"));
-			
-			//build semantic vectors		
-			String buildArgs = new String("-dimension 200 -luceneindexpath ") + DOCINDEX_PATH;
-	
-			FlagConfig flagConfig;
-			flagConfig = FlagConfig.getFlagConfig(buildArgs.split("\\s+"));
-			LuceneUtils utils = new LuceneUtils(flagConfig);
-	
+			//the index is kept current for the next training
+			writer.commit();
+
+			if(foldIn) {
+				space = foldIn(space);
+			}
+			else {
+				space = train();
+				driftDocuments.clear();
+			}
+			changedDocuments.clear();
+			removedDocuments.clear();
+			vectorsCurrent = true;
+		}
+		catch(Exception e) {
+			e.printStackTrace();
+		}
+
+		buildTime = System.nanoTime() - startTime;
+		System.out.println("Semantic vectors LSI " + (foldIn ? "fold-in" : cachedBuild ? "cached training" : "training") + ": build time " + (long)getBuildTime() + " ms, model " + getModelSize() / 1024 + " KB");
+	}
+
+	// Term and document vectors trained from the committed index, read from the artifact cache if the same
+	// documents were trained with the same parameters before
+	private SemanticSpace train() throws IOException
+	{
+		//the training numbers the documents from 0 to the document count, the live documents once no deletion is
+		//left: the merge policy purges the segments of any removed document
+		writer.forceMergeDeletes();
+		writer.commit();
+
+		//build semantic vectors, no global term weight: the fold-in and the queries weigh the terms without the index
+		String[] buildArgs = {"-dimension", Integer.toString(DIMENSION), "-termweight", "none", "-luceneindexpath", indexDir.getPath()};
+
+		FlagConfig flagConfig = FlagConfig.getFlagConfig(buildArgs);
+		cachedBuild = false;
+
+		if(artifactCache == null)
+			return train(flagConfig);
+
+		String entry = trainingKey(flagConfig);
+		File dir = artifactCache.get(entry);
+		if(dir != null) {
+			try {
+				SemanticSpace space = readSpace(dir, flagConfig);
+				cachedBuild = true;
+				return space;
+			}
+			catch(IOException | RuntimeException e) {
+				e.printStackTrace();  //damaged entry, trained again
+			}
+		}
+
+		SemanticSpace space = train(flagConfig);
+		try {
+			artifactCache.put(entry, entryDir -> writeSpace(entryDir, space));
+		}
+		catch(IOException | RuntimeException e) {
+			e.printStackTrace();  //not cached, the training is kept
+		}
+		return space;
+	}
+
+	// Key of a training: the parameters, and the path, terms and frequencies of every document of the index in
+	// the order of the index, which is the order of the trained vectors. Files sharing a name are each in the key.
+	// The terms are those of the comment mode, the key covers it.
+	private String trainingKey(FlagConfig flagConfig) throws IOException
+	{
+		ArtifactCache.Key key = new ArtifactCache.Key("semanticvectors").add(SPACE_FORMAT).add(flagConfig.dimension())
+				.add(flagConfig.vectortype().toString()).add(flagConfig.seedlength()).add(flagConfig.trainingcycles());
+
+		try(Directory directory = FSDirectory.open(indexDir.toPath()); DirectoryReader reader = DirectoryReader.open(directory)) {
+			Bits liveDocs = MultiFields.getLiveDocs(reader);
+
+			for(int doc=0; doc<reader.maxDoc(); ++doc) {
+				if(liveDocs != null && !liveDocs.get(doc))
+					continue;  //removed
+
+				ArtifactCache.Key documentKey = new ArtifactCache.Key("document");
+				Terms terms = reader.getTermVector(doc, CONTENTS_FIELD);
+				if(terms != null) {
+					TermsEnum termsEnum = terms.iterator(null);
+					BytesRef term;
+					while((term = termsEnum.next()) != null) {
+						documentKey.add(term.bytes, term.offset, term.length).add(termsEnum.totalTermFreq());
+					}
+				}
+				key.add(reader.document(doc).get(PATH_FIELD)).add(documentKey.toString());
+			}
+		}
+
+		return key.toString();
+	}
+
+	// vectors of a training into a cache entry, the document vectors by their position in the documents file
+	// as files can share a name
+	private void writeSpace(File dir, SemanticSpace space) throws IOException
+	{
+		VectorStoreRAM docVectors = new VectorStoreRAM(space.flagConfig);
+		for(int doc=0; doc<space.fileNames.length; ++doc) {
+			docVectors.putVector(Integer.toString(doc), space.docVectors[doc]);
+		}
+
+		VectorStoreWriter.writeVectors(new File(dir, TERM_VECTOR_FILE).getPath(), space.flagConfig, space.termVectors);
+		VectorStoreWriter.writeVectors(new File(dir, DOC_VECTOR_FILE).getPath(), space.flagConfig, docVectors);
+		Files.write(new File(dir, DOCUMENT_FILE).toPath(), Arrays.asList(space.fileNames), StandardCharsets.UTF_8);
+	}
+
+	// trained space of a cache entry, the documents in the order of the training
+	private SemanticSpace readSpace(File dir, FlagConfig flagConfig) throws IOException
+	{
+		VectorStore termVectors = VectorStoreRAM.readFromFile(flagConfig, new File(dir, TERM_VECTOR_FILE).getPath());
+		VectorStore docVectorStore = VectorStoreRAM.readFromFile(flagConfig, new File(dir, DOC_VECTOR_FILE).getPath());
+
+		String[] fileNames = Files.readAllLines(new File(dir, DOCUMENT_FILE).toPath(), StandardCharsets.UTF_8).toArray(new String[0]);
+		Vector[] docVectors = new Vector[fileNames.length];
+		for(int doc=0; doc<fileNames.length; ++doc) {
+			docVectors[doc] = docVectorStore.getVector(Integer.toString(doc));
+			if(docVectors[doc] == null)
+				throw new IOException("Document vector missing from the cache: " + doc + " " + fileNames[doc]);
+		}
+
+		return new SemanticSpace(flagConfig, termVectors, fileNames, docVectors);
+	}
+
+	// Term and document vectors trained from the committed index. The vector of every document is kept, the
+	// files sharing a name too, in the order of the index. The readers of the training are closed afterwards.
+	private SemanticSpace train(FlagConfig flagConfig) throws IOException
+	{
+		LuceneUtils utils = new LuceneUtils(flagConfig);
+		List<TermVectorsFromLucene> termVectorIndexers = new ArrayList<TermVectorsFromLucene>();
+
+		try {
 			// build term vector Indexer
 			TermVectorsFromLucene termVectorIndexer;
 			if (!flagConfig.initialtermvectors().isEmpty()) {
@@ -170,24 +551,108 @@ public class LsiFeatureLocation implements FeatureLocation
 				if (!flagConfig.initialdocumentvectors().isEmpty()) {
 					initialDocVectors = VectorStoreRAM.readFromFile(flagConfig, flagConfig.initialdocumentvectors());
 				}
-	
+
 				termVectorIndexer = TermVectorsFromLucene.createTermVectorsFromLucene(flagConfig, initialDocVectors);
 			}
-	
+			termVectorIndexers.add(termVectorIndexer);
+
 			// build doc vector Indexer
 			DocVectors docVectors = new DocVectors(termVectorIndexer.getSemanticTermVectors(), flagConfig, utils);
 			for (int i = 1; i < flagConfig.trainingcycles(); ++i) {
 				termVectorIndexer = TermVectorsFromLucene.createTermVectorsFromLucene(flagConfig, docVectors);
+				termVectorIndexers.add(termVectorIndexer);
 				docVectors = new DocVectors(termVectorIndexer.getSemanticTermVectors(), flagConfig, utils);
 			}
-	
-			// write term and doc vector store
-			VectorStore writeableDocVectors = docVectors.makeWriteableVectorStore();
-			VectorStoreWriter.writeVectors(TERM_VECTOR, flagConfig, termVectorIndexer.getSemanticTermVectors());
-			VectorStoreWriter.writeVectors(DOC_VECTOR, flagConfig, writeableDocVectors);
+
+			// keep term and doc vectors for the queries, DocVectors holds the vectors by document number
+			String[] fileNames = new String[utils.getNumDocs()];
+			Vector[] vectors = new Vector[fileNames.length];
+			for(int doc=0; doc<fileNames.length; ++doc) {
+				fileNames[doc] = utils.getDoc(doc).get(PATH_FIELD);
+				vectors[doc] = docVectors.getVector(Integer.toString(doc));
+			}
+			return new SemanticSpace(flagConfig, termVectorIndexer.getSemanticTermVectors(), fileNames, vectors);
 		}
-		catch(Exception e) {
+		finally {
+			closeIndexReaders(utils);
+			for(TermVectorsFromLucene indexer : termVectorIndexers) {
+				closeIndexReaders(indexer);
+			}
+		}
+	}
+
+	// LuceneUtils opens a reader of the index and has no method to close it, the term vector indexers keep
+	// theirs in a field. Their readers are closed through the fields, else every training leaves its files open.
+	private static void closeIndexReaders(Object owner)
+	{
+		try {
+			for(java.lang.reflect.Field field : owner.getClass().getDeclaredFields()) {
+				if(Modifier.isStatic(field.getModifiers()))
+					continue;
+
+				field.setAccessible(true);
+				Object value = field.get(owner);
+				if(value instanceof IndexReader)
+					((IndexReader)value).close();
+				else if(value instanceof LuceneUtils)
+					closeIndexReaders(value);
+			}
+		}
+		catch(ReflectiveOperationException | IOException | RuntimeException | LinkageError e) {
 			e.printStackTrace();
 		}
 	}
+
+	// The space with the changed documents folded in, the vectors of the other documents are kept.
+	// A document vector is the sum of its term vectors weighted by their frequencies, as DocVectors weights
+	// them without a global term weight; terms the training did not see have no vector.
+	private SemanticSpace foldIn(SemanticSpace space) throws IOException
+	{
+		List<String> fileNames = new ArrayList<String>();
+		List<Vector> docVectors = new ArrayList<Vector>();
+
+		//the files of a removed name are dropped, the ones prepared since are added
+		for(int doc=0; doc<space.fileNames.length; ++doc) {
+			if(!removedDocuments.contains(space.fileNames[doc])) {
+				fileNames.add(space.fileNames[doc]);
+				docVectors.add(space.docVectors[doc]);
+			}
+		}
+
+		for(Map.Entry<String, List<Map<String, Integer>>> entry : changedDocuments.entrySet()) {
+			for(Map<String, Integer> frequencies : entry.getValue()) {
+				Vector docVector = VectorFactory.createZeroVector(space.flagConfig.vectortype(), space.flagConfig.dimension());
+				for(Map.Entry<String, Integer> term : frequencies.entrySet()) {
+					Vector termVector = space.termVectors.getVector(term.getKey());
+					if(termVector != null)
+						docVector.superpose(termVector, term.getValue(), null);
+				}
+				if(!docVector.isZeroVector())
+					docVector.normalize();
+
+				fileNames.add(entry.getKey());
+				docVectors.add(docVector);
+			}
+		}
+
+		return new SemanticSpace(space, fileNames.toArray(new String[0]), docVectors.toArray(new Vector[0]));
+	}
+
+	// documents prepared or removed since the last training, relative to the trained documents
+	public synchronized double getDrift()
+	{
+		if(space == null)
+			return 1;
+		return (double)driftDocuments.size() / Math.max(1, space.trainedDocCount);
+	}
+
+	@Override
+	public synchronized void setArtifactCache(ArtifactCache artifactCache) {
+		this.artifactCache = artifactCache;
+	}
+
+	@Override
+	public synchronized void setDriftThreshold(double driftThreshold) {
+		this.driftThreshold = driftThreshold;
+	}
 }
@@ -0,0 +1,13 @@
+package featurelocation;
+
+import java.io.File;
+
+// FL technique that ignores the documents, for a parser run without LSI
+public class NoFeatureLocation implements FeatureLocation
+{
+	public void prepareDocument(String fileName, TermDocument data) { }
+	public void removeDocument(String fileName) { }
+	public void commit() { }
+	public boolean openWorkspace(File workspaceDir) { return false; }
+	public void reset() { }
+}
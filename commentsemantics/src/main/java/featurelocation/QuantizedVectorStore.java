@@ -0,0 +1,193 @@
+package featurelocation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// Document vectors on disk as bytes with a scale per vector, read through a memory map so a search scans them
+// without copying them to the heap. Every vector has the same stride and the vectors start on a page.
+// The exact vectors can follow as floats from the next page, for re-ranking the best candidates of a search
+// and for reading the vectors back exactly. They take four times the bytes of the quantized vectors: a store
+// with them is about 1.25 times the size of the floats alone, a store without them about a quarter.
+// A store is written once and never changed, searches may run from several threads at once.
+// The map of a store is limited to 2 GB.
+public class QuantizedVectorStore
+{
+	private static final int MAGIC = 0x51564543;
+	private static final int VERSION = 1;
+	private static final int PAGE_SIZE = 4096;  // header page, the sections start on a page
+
+	private final MappedByteBuffer buffer;
+	private final int count;
+	private final int dimension;
+	private final int stride;       // bytes of a quantized vector: its scale and a byte per dimension, 16 byte aligned
+	private final int floatOffset;  // start of the exact vectors, 0 if the store has none
+
+	private QuantizedVectorStore(MappedByteBuffer buffer)
+	{
+		if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+			throw new IllegalArgumentException("Not a quantized vector store");
+
+		this.buffer = buffer;
+		count = buffer.getInt(8);
+		dimension = buffer.getInt(12);
+		stride = buffer.getInt(16);
+		floatOffset = buffer.getInt(20);
+	}
+
+	// Writes the vectors and maps the store. A null vector has no direction and is never found, the others
+	// are quantized to bytes of the largest coordinate of the vector. The exact vectors are written if asked.
+	public static QuantizedVectorStore write(File file, float[][] vectors, int dimension, boolean exactVectors) throws IOException
+	{
+		int stride = align(4 + dimension, 16);
+		long quantizedSize = PAGE_SIZE + (long)vectors.length * stride;
+		int floatOffset = exactVectors ? align(quantizedSize, PAGE_SIZE) : 0;
+		long size = exactVectors ? floatOffset + (long)vectors.length * dimension * 4 : quantizedSize;
+		if(size > Integer.MAX_VALUE)
+			throw new IOException("Vector store over 2 GB: " + size + " bytes");
+
+		try(RandomAccessFile out = new RandomAccessFile(file, "rw"); FileChannel channel = out.getChannel()) {
+			out.setLength(0);
+			MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, size);
+
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, VERSION);
+			buffer.putInt(8, vectors.length);
+			buffer.putInt(12, dimension);
+			buffer.putInt(16, stride);
+			buffer.putInt(20, floatOffset);
+
+			for(int doc=0; doc<vectors.length; ++doc) {
+				float[] vector = vectors[doc];
+				if(vector == null)
+					continue;  //scale 0
+
+				float max = 0;
+				for(float value : vector) {
+					max = Math.max(max, Math.abs(value));
+				}
+				if(max == 0)
+					continue;
+
+				float scale = max / 127;
+				int position = PAGE_SIZE + doc * stride;
+				buffer.putFloat(position, scale);
+				for(int c=0; c<dimension; ++c) {
+					buffer.put(position + 4 + c, (byte)Math.round(vector[c] / scale));
+					if(exactVectors)
+						buffer.putFloat(floatOffset + (doc * dimension + c) * 4, vector[c]);
+				}
+			}
+
+			buffer.force();
+			return new QuantizedVectorStore(buffer);
+		}
+	}
+
+	public static QuantizedVectorStore open(File file) throws IOException
+	{
+		try(RandomAccessFile in = new RandomAccessFile(file, "r"); FileChannel channel = in.getChannel()) {
+			return new QuantizedVectorStore(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	private static int align(long offset, int alignment) {
+		return (int)((offset + alignment - 1) / alignment * alignment);
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public int getDimension() {
+		return dimension;
+	}
+
+	// bytes of the store file
+	public long getFileSize() {
+		return buffer.capacity();
+	}
+
+	// true if the exact vectors follow the quantized ones
+	public boolean hasExactVectors() {
+		return floatOffset != 0;
+	}
+
+	// Vector of a document, null if it has none. The exact vector if the store has them, else the bytes
+	// times the scale, which quantize to the same bytes again.
+	public float[] getVector(int doc)
+	{
+		int position = PAGE_SIZE + doc * stride;
+		float scale = buffer.getFloat(position);
+		if(scale == 0)
+			return null;
+
+		float[] vector = new float[dimension];
+		for(int c=0; c<dimension; ++c) {
+			vector[c] = hasExactVectors() ? buffer.getFloat(floatOffset + (doc * dimension + c) * 4) : buffer.get(position + 4 + c) * scale;
+		}
+		return vector;
+	}
+
+	// dot product of the query and the quantized vector of a document
+	private double quantizedScore(int doc, double[] query)
+	{
+		int position = PAGE_SIZE + doc * stride;
+		double dot = 0;
+		for(int c=0; c<dimension; ++c) {
+			dot += query[c] * buffer.get(position + 4 + c);
+		}
+		return dot * buffer.getFloat(position);
+	}
+
+	// dot product of the query and the exact vector of a document
+	private double exactScore(int doc, double[] query)
+	{
+		int position = floatOffset + doc * dimension * 4;
+		double dot = 0;
+		for(int c=0; c<dimension; ++c) {
+			dot += query[c] * buffer.getFloat(position + c * 4);
+		}
+		return dot;
+	}
+
+	// Documents of the highest dot products with the query, best first. The quantized vectors select the
+	// candidates, the exact vectors rank them if rerankCount is not 0 and the store has them.
+	// Equal scores keep the document order.
+	public List<Integer> nearest(double[] query, int resultCount, int rerankCount)
+	{
+		boolean rerank = rerankCount > 0 && hasExactVectors();
+		int candidateCount = rerank ? Math.max(resultCount, rerankCount) : resultCount;
+		double[] scores = new double[count];
+
+		//lowest score on top, the later document of equal scores goes first
+		PriorityQueue<Integer> candidates = new PriorityQueue<Integer>(candidateCount + 1,
+				(doc1, doc2) -> (scores[doc1] != scores[doc2]) ? Double.compare(scores[doc1], scores[doc2]) : Integer.compare(doc2, doc1));
+
+		for(int doc=0; doc<count; ++doc) {
+			if(buffer.getFloat(PAGE_SIZE + doc * stride) == 0)
+				continue;  //no vector
+
+			scores[doc] = quantizedScore(doc, query);
+			candidates.add(doc);
+			if(candidates.size() > candidateCount)
+				candidates.poll();
+		}
+
+		List<Integer> docs = new ArrayList<Integer>(candidates);
+		if(rerank) {
+			for(int doc : docs) {
+				scores[doc] = exactScore(doc, query);
+			}
+		}
+
+		docs.sort((doc1, doc2) -> (scores[doc1] != scores[doc2]) ? Double.compare(scores[doc2], scores[doc1]) : Integer.compare(doc1, doc2));
+		return new ArrayList<Integer>(docs.subList(0, Math.min(resultCount, docs.size())));
+	}
+}
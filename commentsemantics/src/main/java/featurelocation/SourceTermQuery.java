@@ -0,0 +1,319 @@
+package featurelocation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.FieldInvertState;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermStatistics;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.search.similarities.TFIDFSimilarity;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+
+// Term of a query searched in the fields of the comment sources as if they were one field: the frequencies
+// of the term are added over the fields, its document frequency counts the documents with the term in any
+// of them and the length norm is the one of the joined fields. The fields of the sources of a document hold
+// the terms of its document of the search options, so the scores are the ones of a data field indexed with
+// these search options. A boost weighs the frequencies and the length of its field.
+class SourceTermQuery extends Query
+{
+	private final String term;
+	private final Map<String, Float> fieldBoosts;
+
+	SourceTermQuery(String term, Map<String, Float> fieldBoosts)
+	{
+		this.term = term;
+		this.fieldBoosts = fieldBoosts;
+	}
+
+	// Query of the data field searched in the fields of the comment sources. Terms are searched in the
+	// fields as one field, phrases and the other queries search every field on its own.
+	static Query forSources(Query query, Map<String, Float> fieldBoosts, Analyzer analyzer)
+	{
+		if(query instanceof TermQuery) {
+			Query sourceQuery = new SourceTermQuery(((TermQuery)query).getTerm().text(), fieldBoosts);
+			sourceQuery.setBoost(query.getBoost());
+			return sourceQuery;
+		}
+
+		if(query instanceof BooleanQuery) {
+			BooleanQuery booleanQuery = (BooleanQuery)query;
+			BooleanQuery sourceQuery = new BooleanQuery(booleanQuery.isCoordDisabled());
+			sourceQuery.setBoost(booleanQuery.getBoost());
+			sourceQuery.setMinimumNumberShouldMatch(booleanQuery.getMinimumNumberShouldMatch());
+
+			for(BooleanClause clause : booleanQuery.clauses()) {
+				sourceQuery.add(forSources(clause.getQuery(), fieldBoosts, analyzer), clause.getOccur());
+			}
+			return sourceQuery;
+		}
+
+		try {
+			String[] fields = fieldBoosts.keySet().toArray(new String[0]);
+			return new MultiFieldQueryParser(fields, analyzer, fieldBoosts).parse(query.toString("data"));
+		}
+		catch(ParseException e) {
+			e.printStackTrace();
+			return query;
+		}
+	}
+
+	@Override
+	public Weight createWeight(IndexSearcher searcher) throws IOException
+	{
+		return new SourceWeight(searcher);
+	}
+
+	@Override
+	public String toString(String field)
+	{
+		return "sources:" + term + ((getBoost() != 1f) ? "^" + getBoost() : "");
+	}
+
+	@Override
+	public boolean equals(Object other)
+	{
+		if(!super.equals(other))
+			return false;
+
+		SourceTermQuery query = (SourceTermQuery)other;
+		return term.equals(query.term) && fieldBoosts.equals(query.fieldBoosts);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return 31 * (31 * super.hashCode() + term.hashCode()) + fieldBoosts.hashCode();
+	}
+
+	private class SourceWeight extends Weight
+	{
+		private final TFIDFSimilarity similarity;
+		private final Similarity.SimWeight simWeight;
+
+		private SourceWeight(IndexSearcher searcher) throws IOException
+		{
+			if(!(searcher.getSimilarity() instanceof TFIDFSimilarity))
+				throw new IOException("Comment sources are scored by a tf-idf similarity only");
+
+			similarity = (TFIDFSimilarity)searcher.getSimilarity();
+
+			// The statistics of the data field: documents with tokens in a field, the same documents
+			// a data field of these search options marks as query documents, and documents with the term.
+			// The field has no norms in an index of comment sources, the norm is added by the scorer.
+			List<Term> sources = new ArrayList<Term>();
+			List<Term> terms = new ArrayList<Term>();
+			for(String field : fieldBoosts.keySet()) {
+				sources.add(new Term(CorpusIndex.SOURCE_FIELD, field));
+				terms.add(new Term(field, term));
+			}
+
+			CollectionStatistics collectionStatistics = new CollectionStatistics("data", countDocuments(searcher, sources), -1, -1, -1);
+			TermStatistics termStatistics = new TermStatistics(new BytesRef(term), countDocuments(searcher, terms), -1);
+			simWeight = similarity.computeWeight(getBoost(), collectionStatistics, termStatistics);
+		}
+
+		// documents with any of the terms
+		private long countDocuments(IndexSearcher searcher, List<Term> terms) throws IOException
+		{
+			FixedBitSet documents = new FixedBitSet(searcher.getIndexReader().maxDoc());
+
+			for(LeafReaderContext context : searcher.getIndexReader().leaves()) {
+				for(Term term : terms) {
+					DocsEnum docs = docs(context.reader(), term.field(), term.text(), null);
+					if(docs == null)
+						continue;
+
+					for(int doc=docs.nextDoc(); doc!=DocIdSetIterator.NO_MORE_DOCS; doc=docs.nextDoc()) {
+						documents.set(context.docBase + doc);
+					}
+				}
+			}
+
+			return documents.cardinality();
+		}
+
+		@Override
+		public Query getQuery() {
+			return SourceTermQuery.this;
+		}
+
+		@Override
+		public float getValueForNormalization() {
+			return simWeight.getValueForNormalization();
+		}
+
+		@Override
+		public void normalize(float norm, float topLevelBoost) {
+			simWeight.normalize(norm, topLevelBoost);
+		}
+
+		@Override
+		public Scorer scorer(LeafReaderContext context, Bits acceptDocs) throws IOException
+		{
+			List<DocsEnum> docs = new ArrayList<DocsEnum>();
+			List<Float> boosts = new ArrayList<Float>();
+			List<NumericDocValues> lengths = new ArrayList<NumericDocValues>();
+
+			for(Map.Entry<String, Float> field : fieldBoosts.entrySet()) {
+				DocsEnum fieldDocs = docs(context.reader(), field.getKey(), term, acceptDocs);
+				if(fieldDocs != null) {
+					docs.add(fieldDocs);
+					boosts.add(field.getValue());
+				}
+			}
+			if(docs.isEmpty())
+				return null;
+
+			float[] lengthBoosts = new float[fieldBoosts.size()];
+			int i = 0;
+			for(Map.Entry<String, Float> field : fieldBoosts.entrySet()) {
+				lengths.add(context.reader().getNumericDocValues(CorpusIndex.lengthField(field.getKey())));
+				lengthBoosts[i++] = field.getValue();
+			}
+
+			return new SourceScorer(this, docs, boosts, lengths, lengthBoosts, similarity, similarity.simScorer(simWeight, context));
+		}
+
+		@Override
+		public Explanation explain(LeafReaderContext context, int doc) throws IOException
+		{
+			Scorer scorer = scorer(context, context.reader().getLiveDocs());
+			if(scorer == null || scorer.advance(doc) != doc)
+				return new Explanation(0f, "no matching term in the comment sources");
+
+			return new Explanation(scorer.score(), "sources:" + term + " in " + fieldBoosts.keySet() + ", frequency " + scorer.freq());
+		}
+	}
+
+	// documents of a term of a field with their frequencies, null if the field has no such term
+	private static DocsEnum docs(LeafReader reader, String field, String term, Bits acceptDocs) throws IOException
+	{
+		Terms terms = reader.terms(field);
+		if(terms == null)
+			return null;
+
+		TermsEnum termsEnum = terms.iterator(null);
+		if(!termsEnum.seekExact(new BytesRef(term)))
+			return null;
+
+		return termsEnum.docs(acceptDocs, null, DocsEnum.FLAG_FREQS);
+	}
+
+	// documents of the term in any field, in document order
+	private class SourceScorer extends Scorer
+	{
+		private final DocsEnum[] docs;
+		private final float[] boosts;
+		private final NumericDocValues[] lengths;  // tokens of every field, null if no document of the segment has the field
+		private final float[] lengthBoosts;
+		private final TFIDFSimilarity similarity;
+		private final Similarity.SimScorer simScorer;
+
+		private int doc = -1;
+
+		private SourceScorer(Weight weight, List<DocsEnum> docs, List<Float> boosts, List<NumericDocValues> lengths, float[] lengthBoosts,
+				TFIDFSimilarity similarity, Similarity.SimScorer simScorer) throws IOException
+		{
+			super(weight);
+			this.docs = docs.toArray(new DocsEnum[0]);
+			this.boosts = new float[boosts.size()];
+			for(int i=0; i<this.boosts.length; ++i) {
+				this.boosts[i] = boosts.get(i);
+			}
+			this.lengths = lengths.toArray(new NumericDocValues[0]);
+			this.lengthBoosts = lengthBoosts;
+			this.similarity = similarity;
+			this.simScorer = simScorer;
+
+			for(DocsEnum fieldDocs : this.docs) {
+				fieldDocs.nextDoc();
+			}
+		}
+
+		@Override
+		public int docID() {
+			return doc;
+		}
+
+		@Override
+		public int nextDoc() throws IOException {
+			return advance(doc + 1);
+		}
+
+		@Override
+		public int advance(int target) throws IOException
+		{
+			doc = DocIdSetIterator.NO_MORE_DOCS;
+			for(DocsEnum fieldDocs : docs) {
+				if(fieldDocs.docID() < target)
+					fieldDocs.advance(target);
+				doc = Math.min(doc, fieldDocs.docID());
+			}
+			return doc;
+		}
+
+		// frequency in the joined fields, weighed by the boosts
+		private float weightedFreq() throws IOException
+		{
+			float freq = 0;
+			for(int i=0; i<docs.length; ++i) {
+				if(docs[i].docID() == doc)
+					freq += boosts[i] * docs[i].freq();
+			}
+			return freq;
+		}
+
+		@Override
+		public int freq() throws IOException {
+			return Math.round(weightedFreq());
+		}
+
+		@Override
+		public float score() throws IOException
+		{
+			float length = 0;
+			for(int i=0; i<lengths.length; ++i) {
+				if(lengths[i] != null)
+					length += lengthBoosts[i] * lengths[i].get(doc);
+			}
+
+			//the norm of the joined fields, encoded like the norm of an indexed field
+			FieldInvertState state = new FieldInvertState("data", 0, Math.round(length), 0, 0, 1f);
+			return simScorer.score(doc, weightedFreq()) * similarity.decodeNormValue(similarity.computeNorm(state));
+		}
+
+		@Override
+		public long cost()
+		{
+			long cost = 0;
+			for(DocsEnum fieldDocs : docs) {
+				cost += fieldDocs.cost();
+			}
+			return cost;
+		}
+	}
+}
@@ -0,0 +1,1034 @@
+package featurelocation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.CholeskyDecomposition;
+import org.apache.commons.math3.linear.EigenDecomposition;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.NonPositiveDefiniteMatrixException;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.search.similarities.DefaultSimilarity;
+import org.apache.lucene.search.similarities.TFIDFSimilarity;
+import org.apache.lucene.util.BytesRef;
+
+// Latent semantic indexing by a truncated singular value decomposition of the tf-idf term-document matrix,
+// computed with a randomized SVD: the range of the matrix is sampled with random vectors, refined with power
+// iterations and the small projected matrix is decomposed exactly. The matrix products run on all cores.
+// The matrix is built from the terms of the documents without stop words, weighted like the VSM. Documents
+// and queries are folded into the space of the first singular vectors as the sum of their weighted term
+// vectors and compared by cosine. Once the space is built, changed documents are folded into it with the
+// term vectors of the last training until the changes since that training pass the drift threshold.
+// Quantized, the document vectors are kept in a memory mapped store of bytes off the heap instead, with their
+// exact vectors only if the best documents are re-ranked by them.
+// With an artifact cache, a training of the same documents and parameters as an earlier one reads its space.
+// All state is held by the instance, several engines build and search in parallel in one JVM.
+public class SvdFeatureLocation implements LsiEngine
+{
+	private final int QUERYDOC_COUNT = 50;
+	private final int DIMENSION = 200;       // rank of the truncated SVD
+	private final int OVERSAMPLING = 30;     // extra random vectors, keep the last singular vectors accurate
+	private final int POWER_ITERATIONS = 3;  // the singular values of term-document matrices decay slowly
+	private final long SEED = 42;            // the same documents give the same space
+	private final int SPACE_FORMAT = 1;      // change when the space file or the training change
+
+	private static final String SPACE_FILE = "svdspace.bin";     // terms, term vectors and documents of a cached space
+	private static final String VECTOR_FILE = "svdvectors.bin";  // document vectors of a cached space
+	private static final String STORE_PREFIX = "svdstore";        // document vectors of a build that is not cached
+
+	// File name : forward entries of every file of that name. Files of several packages can share a name, the
+	// corpus index keeps each of them and so does the space. They are ordered by their forward entries, so the
+	// space does not depend on the order the files were parsed in.
+	private final Map<String, List<BytesRef>> documents = new TreeMap<String, List<BytesRef>>();
+	private File workspaceDir = null;        // keeps the documents for later runs, in memory only if not set
+
+	private boolean vectorsCurrent = false;         // semantic space is built from the current documents
+	private final Set<String> changedDocuments = new HashSet<String>();  // prepared or removed since the last build
+	private final Set<String> driftDocuments = new HashSet<String>();    // prepared or removed since the last training
+	private double driftThreshold = 0.1;            // changed documents, relative to the trained ones, that are folded in
+	private volatile SemanticSpace space = null;    // semantic space of the last build
+
+	private boolean quantized = false;              // document vectors in a memory mapped store instead of the heap
+	private volatile int rerankCount = 200;         // best documents by the bytes of the store ranked by their exact vectors, 0 ranks by the bytes
+	private File storeFile = null;                  // store of the last build in the workspace or the temp dir, null if the store is cached
+
+	private ArtifactCache artifactCache = null;     // spaces of earlier trainings, not cached if not set
+	private boolean cachedBuild = false;            // last training read its space from the cache
+
+	private final StandardAnalyzer standardAnalyzer = new StandardAnalyzer();  // query terms as the VSM takes them
+	private final TFIDFSimilarity similarity = new DefaultSimilarity();
+
+	private volatile long buildTime = 0;            // nanoseconds of the last build
+	private volatile double latencyTarget = 50;     // milliseconds a query should take at most
+	private final AtomicLong queryTime = new AtomicLong();  // nanoseconds of all queries
+	private final AtomicInteger queryCount = new AtomicInteger();
+	private final AtomicInteger slowQueryCount = new AtomicInteger();  // queries over the latency target
+
+	// Term and document vectors of one build, never changed after the build
+	private static class SemanticSpace
+	{
+		private final Map<String, Integer> termIds;  // term : row of the term vectors
+		private final float[] idf;
+		private final float[][] termVectors;         // left singular vectors, by term
+		private final String[] fileNames;
+		private final float[][] docVectors;          // unit length, null for a document without terms. Null if stored
+		private final QuantizedVectorStore store;    // document vectors if quantized
+		private final double[] singularValues;
+		private final int trainedDocCount;           // documents of the training
+
+		private SemanticSpace(Map<String, Integer> termIds, float[] idf, float[][] termVectors, String[] fileNames, float[][] docVectors, double[] singularValues, int trainedDocCount)
+		{
+			this.termIds = termIds;
+			this.idf = idf;
+			this.termVectors = termVectors;
+			this.fileNames = fileNames;
+			this.docVectors = docVectors;
+			this.store = null;
+			this.singularValues = singularValues;
+			this.trainedDocCount = trainedDocCount;
+		}
+
+		// the space with its document vectors in the store
+		private SemanticSpace(SemanticSpace space, QuantizedVectorStore store)
+		{
+			termIds = space.termIds;
+			idf = space.idf;
+			termVectors = space.termVectors;
+			fileNames = space.fileNames;
+			docVectors = null;
+			this.store = store;
+			singularValues = space.singularValues;
+			trainedDocCount = space.trainedDocCount;
+		}
+
+		private int rank() {
+			return singularValues.length;
+		}
+
+		private float[] docVector(int doc) {
+			return (store != null) ? store.getVector(doc) : docVectors[doc];
+		}
+	}
+
+	public SvdFeatureLocation()
+	{
+		reset();
+	}
+
+	@Override
+	public synchronized void prepareDocument(String fileName, TermDocument data)
+	{
+		addDocument(fileName, DocumentVectors.forwardEntry(data));
+		documentChanged(fileName);
+	}
+
+	private void addDocument(String fileName, BytesRef forwardEntry)
+	{
+		List<BytesRef> entries = documents.computeIfAbsent(fileName, name -> new ArrayList<BytesRef>());
+		entries.add(forwardEntry);
+		Collections.sort(entries);
+	}
+
+	// removes every file of the name, like the corpus index
+	@Override
+	public synchronized void removeDocument(String fileName)
+	{
+		documents.remove(fileName);
+		documentChanged(fileName);
+	}
+
+	private void documentChanged(String fileName)
+	{
+		vectorsCurrent = false;
+		changedDocuments.add(fileName);
+		driftDocuments.add(fileName);
+	}
+
+	@Override
+	public synchronized void commit()
+	{
+		if(workspaceDir == null)
+			return;  //documents are kept in memory
+
+		try {
+			writeDocuments(documentFile());
+		}
+		catch(IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public synchronized boolean openWorkspace(File workspaceDir)
+	{
+		deleteStore();
+		this.workspaceDir = workspaceDir;
+		deleteOldStores();
+
+		if(workspaceDir != null && documentFile().isFile()) {
+			try {
+				readDocuments(documentFile());
+				return true;  //documents of an earlier run, the space is built again on the first query
+			}
+			catch(IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		reset();
+		return false;
+	}
+
+	@Override
+	public synchronized void reset()
+	{
+		documents.clear();
+		vectorsCurrent = false;
+		changedDocuments.clear();
+		driftDocuments.clear();
+		space = null;
+		deleteStore();
+	}
+
+	private File documentFile() {
+		return new File(workspaceDir, "svddocs.bin");
+	}
+
+	// file name and forward entry of every document
+	private void writeDocuments(File file) throws IOException
+	{
+		File tempFile = new File(file.getPath() + ".tmp");
+
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+			String[] fileNames = documentNames();
+			BytesRef[] forwardEntries = documentEntries();
+
+			out.writeInt(fileNames.length);
+			for(int doc=0; doc<fileNames.length; ++doc) {
+				out.writeUTF(fileNames[doc]);
+				out.writeInt(forwardEntries[doc].length);
+				out.write(forwardEntries[doc].bytes, forwardEntries[doc].offset, forwardEntries[doc].length);
+			}
+		}
+
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private void readDocuments(File file) throws IOException
+	{
+		documents.clear();
+		vectorsCurrent = false;
+		changedDocuments.clear();
+		driftDocuments.clear();
+		space = null;
+
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			int count = in.readInt();
+			for(int i=0; i<count; ++i) {
+				String fileName = in.readUTF();
+				byte[] forwardEntry = new byte[in.readInt()];
+				in.readFully(forwardEntry);
+				addDocument(fileName, new BytesRef(forwardEntry));
+			}
+		}
+	}
+
+	@Override
+	public synchronized void buildSemanticVectors()
+	{
+		if(vectorsCurrent)
+			return;  //no document changed since the last build
+
+		long startTime = System.nanoTime();
+		boolean foldIn = (space != null) && getDrift() <= driftThreshold && canFoldIn(space);
+
+		try {
+			if(foldIn) {
+				space = foldIn(space);
+			}
+			else {
+				space = train();
+				driftDocuments.clear();
+			}
+			if(quantized && space.store == null)
+				space = storeVectors(space);
+			else
+				deleteStore();  //no store, or the store of the cache
+			changedDocuments.clear();
+			vectorsCurrent = true;
+		}
+		catch(IOException e) {
+			e.printStackTrace();
+		}
+
+		buildTime = System.nanoTime() - startTime;
+
+		Runtime runtime = Runtime.getRuntime();
+		SemanticSpace space = this.space;
+		if(space != null) {
+			System.out.println("SVD LSI " + (foldIn ? "fold-in" : cachedBuild ? "cached training" : "training") + ": " + space.termVectors.length + " terms, " + space.fileNames.length + " documents, rank " + space.rank()
+					+ ", build time " + (long)getBuildTime() + " ms, model " + getModelSize() / 1024 + " KB"
+					+ ((space.store != null) ? ", vector store " + space.store.getFileSize() / 1024 + " KB mapped" : "")
+					+ ", heap used " + (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024) + " MB");
+		}
+	}
+
+	// True if the document vectors of the space can be kept by a fold-in: they are exact, or they are the bytes
+	// of a store without exact vectors that quantize to the same bytes in the next store.
+	private boolean canFoldIn(SemanticSpace space) {
+		return space.store == null || space.store.hasExactVectors() || (quantized && rerankCount == 0);
+	}
+
+	// Semantic space of the current documents, read from the artifact cache if the same documents were trained
+	// with the same parameters before. A quantized space searches the store of the cache.
+	private SemanticSpace train() throws IOException
+	{
+		String[] fileNames = documentNames();
+		BytesRef[] forwardEntries = documentEntries();
+		cachedBuild = false;
+
+		if(artifactCache == null)
+			return decompose(fileNames, forwardEntries);
+
+		//the forward entries hold the terms of the comment mode, the key covers it
+		ArtifactCache.Key key = new ArtifactCache.Key("svd").add(SPACE_FORMAT).add(DIMENSION).add(OVERSAMPLING).add(POWER_ITERATIONS).add(SEED);
+		for(int doc=0; doc<fileNames.length; ++doc) {
+			key.add(fileNames[doc]).add(forwardEntries[doc].bytes, forwardEntries[doc].offset, forwardEntries[doc].length);
+		}
+		String entry = key.toString();
+
+		File dir = artifactCache.get(entry);
+		if(dir != null) {
+			try {
+				SemanticSpace space = readSpace(dir);
+				cachedBuild = true;
+				return space;
+			}
+			catch(IOException | RuntimeException e) {
+				e.printStackTrace();  //damaged entry, trained again
+			}
+		}
+
+		SemanticSpace space = decompose(fileNames, forwardEntries);
+		try {
+			dir = artifactCache.put(entry, entryDir -> writeSpace(entryDir, space));
+			if(quantized)
+				return new SemanticSpace(space, QuantizedVectorStore.open(new File(dir, VECTOR_FILE)));
+		}
+		catch(IOException | RuntimeException e) {
+			e.printStackTrace();  //not cached, the build stores the vectors of the training if quantized
+		}
+		return space;
+	}
+
+	// space of a training into a cache entry, the document vectors in a store
+	private void writeSpace(File dir, SemanticSpace space) throws IOException
+	{
+		String[] terms = new String[space.termVectors.length];
+		for(Map.Entry<String, Integer> entry : space.termIds.entrySet()) {
+			terms[entry.getValue()] = entry.getKey();
+		}
+
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, SPACE_FILE))))) {
+			out.writeInt(SPACE_FORMAT);
+			out.writeInt(space.rank());
+			for(double value : space.singularValues) {
+				out.writeDouble(value);
+			}
+
+			out.writeInt(terms.length);
+			for(int id=0; id<terms.length; ++id) {
+				out.writeUTF(terms[id]);
+				out.writeFloat(space.idf[id]);
+				for(float value : space.termVectors[id]) {
+					out.writeFloat(value);
+				}
+			}
+
+			out.writeInt(space.fileNames.length);
+			for(String fileName : space.fileNames) {
+				out.writeUTF(fileName);
+			}
+			out.writeInt(space.trainedDocCount);
+		}
+
+		QuantizedVectorStore.write(new File(dir, VECTOR_FILE), space.docVectors, space.rank(), true);  //exact for the spaces on the heap
+	}
+
+	// space of a cache entry, its document vectors searched in the store if quantized
+	private SemanticSpace readSpace(File dir) throws IOException
+	{
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(new File(dir, SPACE_FILE))))) {
+			if(in.readInt() != SPACE_FORMAT)
+				throw new IOException("Space format of an other version: " + dir);
+
+			double[] singularValues = new double[in.readInt()];
+			for(int k=0; k<singularValues.length; ++k) {
+				singularValues[k] = in.readDouble();
+			}
+
+			int termCount = in.readInt();
+			Map<String, Integer> termIds = new HashMap<String, Integer>();
+			float[] idf = new float[termCount];
+			float[][] termVectors = new float[termCount][singularValues.length];
+			for(int id=0; id<termCount; ++id) {
+				termIds.put(in.readUTF(), id);
+				idf[id] = in.readFloat();
+				for(int c=0; c<singularValues.length; ++c) {
+					termVectors[id][c] = in.readFloat();
+				}
+			}
+
+			String[] fileNames = new String[in.readInt()];
+			for(int doc=0; doc<fileNames.length; ++doc) {
+				fileNames[doc] = in.readUTF();
+			}
+			int trainedDocCount = in.readInt();
+
+			QuantizedVectorStore store = QuantizedVectorStore.open(new File(dir, VECTOR_FILE));
+			if(store.size() != fileNames.length)
+				throw new IOException("Vector store does not match its space: " + dir);
+
+			float[][] docVectors = new float[fileNames.length][];
+			if(!quantized) {
+				for(int doc=0; doc<fileNames.length; ++doc) {
+					docVectors[doc] = store.getVector(doc);
+				}
+			}
+
+			SemanticSpace space = new SemanticSpace(termIds, idf, termVectors, fileNames, docVectors, singularValues, trainedDocCount);
+			return quantized ? new SemanticSpace(space, store) : space;
+		}
+	}
+
+	// the space with its document vectors written to a new store, the store of the last build is deleted.
+	// Queries still searching the old store keep its map.
+	private SemanticSpace storeVectors(SemanticSpace space) throws IOException
+	{
+		if(workspaceDir != null)
+			workspaceDir.mkdirs();
+		File file = File.createTempFile(STORE_PREFIX, ".bin", workspaceDir);  //the temp dir if no workspace is set
+		QuantizedVectorStore store = QuantizedVectorStore.write(file, space.docVectors, space.rank(), rerankCount > 0);
+
+		deleteStore();
+		storeFile = file;
+		return new SemanticSpace(space, store);
+	}
+
+	private void deleteStore()
+	{
+		if(storeFile != null)
+			storeFile.delete();  //a map still open keeps the file on windows until the exit
+		storeFile = null;
+	}
+
+	// stores an earlier run left in the workspace, its last store is only deleted by the next build
+	private void deleteOldStores()
+	{
+		if(workspaceDir == null)
+			return;
+
+		File[] oldStores = workspaceDir.listFiles();
+		if(oldStores == null)
+			return;
+		for(File file : oldStores) {
+			if(file.getName().startsWith(STORE_PREFIX))
+				file.delete();
+		}
+	}
+
+	// semantic space of the documents by a randomized SVD of their term-document matrix
+	private SemanticSpace decompose(String[] fileNames, BytesRef[] forwardEntries) throws IOException
+	{
+		TermDocumentMatrix matrix = new TermDocumentMatrix(forwardEntries);
+		int termCount = matrix.termCount();
+		int docCount = fileNames.length;
+
+		int rank = Math.min(DIMENSION, Math.min(termCount, docCount));
+		int samples = Math.min(rank + OVERSAMPLING, Math.min(termCount, docCount));
+
+		//random samples of the range of the matrix, refined by power iterations
+		Random random = new Random(SEED);
+		double[][] sampleVectors = new double[docCount][samples];
+		for(double[] row : sampleVectors) {
+			for(int c=0; c<samples; ++c) {
+				row[c] = random.nextGaussian();
+			}
+		}
+
+		double[][] basis = orthonormalize(matrix.multiply(sampleVectors));
+		for(int iteration=0; iteration<POWER_ITERATIONS; ++iteration) {
+			basis = orthonormalize(matrix.multiply(orthonormalize(matrix.multiplyTransposed(basis))));
+		}
+
+		//the projection of the matrix onto the basis is small, its singular vectors are the eigenvectors of its gram matrix
+		double[][] projection = matrix.multiplyTransposed(basis);  // transposed projection, by document
+		int columns = columnCount(projection);
+		double[][] eigenvectors = new double[columns][];
+		double[] eigenvalues = new double[0];
+
+		if(columns > 0) {
+			EigenDecomposition eigen = new EigenDecomposition(new Array2DRowRealMatrix(gram(projection, columns), false));
+			eigenvalues = eigen.getRealEigenvalues();
+			for(int c=0; c<columns; ++c) {
+				eigenvectors[c] = eigen.getEigenvector(c).toArray();
+			}
+		}
+
+		//largest singular values first, a rank deficient matrix has less than the rank
+		Integer[] order = new Integer[eigenvalues.length];
+		for(int c=0; c<order.length; ++c) {
+			order[c] = c;
+		}
+		final double[] values = eigenvalues;
+		Arrays.sort(order, (c1, c2) -> Double.compare(values[c2], values[c1]));
+
+		double maxValue = (order.length > 0) ? values[order[0]] : 0;
+		int kept = 0;
+		while(kept < Math.min(rank, order.length) && values[order[kept]] > maxValue * 1e-12)
+			++kept;
+
+		double[][] transform = new double[columns][kept];  // singular vectors of the projection
+		double[] singularValues = new double[kept];
+		for(int k=0; k<kept; ++k) {
+			singularValues[k] = Math.sqrt(values[order[k]]);
+			for(int c=0; c<columns; ++c) {
+				transform[c][k] = eigenvectors[order[k]][c];
+			}
+		}
+
+		//term vectors are the left singular vectors, a document is the sum of its weighted term vectors
+		float[][] termVectors = toFloat(multiply(basis, transform), false);
+		float[][] docVectors = toFloat(multiply(projection, transform), true);
+
+		return new SemanticSpace(matrix.termIds, matrix.idf, termVectors, fileNames, docVectors, singularValues, docCount);
+	}
+
+	// the space with the changed documents folded in, the vectors of the other documents are kept
+	private SemanticSpace foldIn(SemanticSpace space) throws IOException
+	{
+		//the files of a name follow each other in the space and keep their order while the name is unchanged
+		Map<String, Integer> oldDocs = new HashMap<String, Integer>();  // file name : first document of the name in the space
+		for(int doc=0; doc<space.fileNames.length; ++doc) {
+			oldDocs.putIfAbsent(space.fileNames[doc], doc);
+		}
+
+		String[] fileNames = documentNames();
+		BytesRef[] forwardEntries = documentEntries();
+		float[][] docVectors = new float[fileNames.length][];
+		List<String> terms = new ArrayList<String>();
+		List<Long> frequencies = new ArrayList<Long>();
+
+		int first = 0;  // first document of the current name
+		for(int doc=0; doc<fileNames.length; ++doc) {
+			if(doc == 0 || !fileNames[doc].equals(fileNames[doc - 1]))
+				first = doc;
+
+			Integer oldDoc = oldDocs.get(fileNames[doc]);
+			if(oldDoc != null && !changedDocuments.contains(fileNames[doc])) {
+				docVectors[doc] = space.docVector(oldDoc + doc - first);
+				continue;
+			}
+
+			//terms the training did not see have no vector
+			terms.clear();
+			frequencies.clear();
+			DocumentVectors.readForwardEntry(forwardEntries[doc], terms, frequencies);
+
+			Map<Integer, Long> termFrequencies = new HashMap<Integer, Long>();  // term id : frequency
+			for(int n=0; n<terms.size(); ++n) {
+				Integer id = space.termIds.get(terms.get(n));
+				if(id != null)
+					termFrequencies.put(id, frequencies.get(n));
+			}
+
+			double[][] docVector = {foldIn(space, termFrequencies)};
+			docVectors[doc] = toFloat(docVector, true)[0];
+		}
+
+		return new SemanticSpace(space.termIds, space.idf, space.termVectors, fileNames, docVectors, space.singularValues, space.trainedDocCount);
+	}
+
+	// file name of every document, a name once for each of its files
+	private String[] documentNames()
+	{
+		List<String> fileNames = new ArrayList<String>();
+		for(Map.Entry<String, List<BytesRef>> entry : documents.entrySet()) {
+			for(int i=0; i<entry.getValue().size(); ++i) {
+				fileNames.add(entry.getKey());
+			}
+		}
+		return fileNames.toArray(new String[0]);
+	}
+
+	// forward entry of every document, in the order of documentNames
+	private BytesRef[] documentEntries()
+	{
+		List<BytesRef> forwardEntries = new ArrayList<BytesRef>();
+		for(List<BytesRef> entries : documents.values()) {
+			forwardEntries.addAll(entries);
+		}
+		return forwardEntries.toArray(new BytesRef[0]);
+	}
+
+	// sum of the term vectors weighted by tf-idf, term id : frequency
+	private double[] foldIn(SemanticSpace space, Map<Integer, Long> frequencies)
+	{
+		double[] vector = new double[space.rank()];
+		for(Map.Entry<Integer, Long> entry : frequencies.entrySet()) {
+			double weight = similarity.tf(entry.getValue()) * space.idf[entry.getKey()];
+			float[] termVector = space.termVectors[entry.getKey()];
+			for(int c=0; c<vector.length; ++c) {
+				vector[c] += weight * termVector[c];
+			}
+		}
+		return vector;
+	}
+
+	// documents prepared or removed since the last training, relative to the trained documents
+	public synchronized double getDrift()
+	{
+		if(space == null)
+			return 1;
+		return (double)driftDocuments.size() / Math.max(1, space.trainedDocCount);
+	}
+
+	// Sparse tf-idf term-document matrix, by document and by term for the products on several threads
+	private class TermDocumentMatrix
+	{
+		private final Map<String, Integer> termIds = new HashMap<String, Integer>();
+		private float[] idf;
+
+		private final int[][] docTerms;    // term ids of each document
+		private final float[][] docWeights;
+
+		private final int[] termStart;     // entries of term i from termStart[i] to termStart[i+1]
+		private final int[] termDocs;
+		private final float[] termWeights;
+
+		private TermDocumentMatrix(BytesRef[] forwardEntries) throws IOException
+		{
+			int docCount = forwardEntries.length;
+			docTerms = new int[docCount][];
+			docWeights = new float[docCount][];
+
+			int[] docFreqs = new int[16];
+			List<String> terms = new ArrayList<String>();
+			List<Long> frequencies = new ArrayList<Long>();
+			int entryCount = 0;
+
+			for(int doc=0; doc<docCount; ++doc) {
+				terms.clear();
+				frequencies.clear();
+				DocumentVectors.readForwardEntry(forwardEntries[doc], terms, frequencies);
+
+				int size = terms.size();
+				docTerms[doc] = new int[size];
+				docWeights[doc] = new float[size];
+
+				for(int n=0; n<size; ++n) {
+					Integer id = termIds.get(terms.get(n));
+					if(id == null) {
+						id = termIds.size();
+						termIds.put(terms.get(n), id);
+					}
+
+					if(id >= docFreqs.length)
+						docFreqs = Arrays.copyOf(docFreqs, docFreqs.length * 2);
+					++docFreqs[id];
+
+					docTerms[doc][n] = id;
+					docWeights[doc][n] = similarity.tf(frequencies.get(n));
+				}
+				entryCount += size;
+			}
+
+			int termCount = termIds.size();
+			idf = new float[termCount];
+			for(int id=0; id<termCount; ++id) {
+				idf[id] = similarity.idf(docFreqs[id], docCount);
+			}
+
+			//weights by document, then the same entries by term
+			termStart = new int[termCount + 1];
+			for(int doc=0; doc<docCount; ++doc) {
+				for(int n=0; n<docTerms[doc].length; ++n) {
+					docWeights[doc][n] *= idf[docTerms[doc][n]];
+					++termStart[docTerms[doc][n] + 1];
+				}
+			}
+			for(int id=0; id<termCount; ++id) {
+				termStart[id + 1] += termStart[id];
+			}
+
+			termDocs = new int[entryCount];
+			termWeights = new float[entryCount];
+			int[] next = Arrays.copyOf(termStart, termCount);
+			for(int doc=0; doc<docCount; ++doc) {
+				for(int n=0; n<docTerms[doc].length; ++n) {
+					int entry = next[docTerms[doc][n]]++;
+					termDocs[entry] = doc;
+					termWeights[entry] = docWeights[doc][n];
+				}
+			}
+		}
+
+		private int termCount() {
+			return idf.length;
+		}
+
+		// matrix times a matrix given by document, the result by term
+		private double[][] multiply(double[][] byDocument)
+		{
+			int columns = columnCount(byDocument);
+			double[][] result = new double[termCount()][columns];
+
+			IntStream.range(0, termCount()).parallel().forEach(term -> {
+				double[] row = result[term];
+				for(int entry=termStart[term]; entry<termStart[term + 1]; ++entry) {
+					addScaled(row, termWeights[entry], byDocument[termDocs[entry]]);
+				}
+			});
+			return result;
+		}
+
+		// transposed matrix times a matrix given by term, the result by document
+		private double[][] multiplyTransposed(double[][] byTerm)
+		{
+			int columns = columnCount(byTerm);
+			double[][] result = new double[docTerms.length][columns];
+
+			IntStream.range(0, docTerms.length).parallel().forEach(doc -> {
+				double[] row = result[doc];
+				for(int n=0; n<docTerms[doc].length; ++n) {
+					addScaled(row, docWeights[doc][n], byTerm[docTerms[doc][n]]);
+				}
+			});
+			return result;
+		}
+	}
+
+	private static int columnCount(double[][] matrix) {
+		return (matrix.length > 0) ? matrix[0].length : 0;
+	}
+
+	private static void addScaled(double[] target, double scale, double[] vector)
+	{
+		for(int c=0; c<target.length; ++c) {
+			target[c] += scale * vector[c];
+		}
+	}
+
+	// Orthonormal basis of the columns of a tall matrix by a Cholesky QR: the matrix times the inverse of the
+	// Cholesky factor of its gram matrix, done twice for the precision lost in the gram matrix. A rank
+	// deficient matrix has no Cholesky factor, its basis is found from the eigenvectors instead.
+	private static double[][] orthonormalize(double[][] matrix)
+	{
+		int columns = columnCount(matrix);
+		if(columns == 0)
+			return matrix;
+
+		try {
+			for(int pass=0; pass<2; ++pass) {
+				CholeskyDecomposition cholesky = new CholeskyDecomposition(new Array2DRowRealMatrix(gram(matrix, columns), false));
+				matrix = multiply(matrix, MatrixUtils.inverse(cholesky.getLT()).getData());
+			}
+			return matrix;
+		}
+		catch(NonPositiveDefiniteMatrixException e) {
+			return orthonormalizeRankDeficient(matrix);
+		}
+	}
+
+	// the matrix times the eigenvectors of its gram matrix scaled by the inverse square roots of the eigenvalues,
+	// done twice. Columns of eigenvalues near zero are dropped.
+	private static double[][] orthonormalizeRankDeficient(double[][] matrix)
+	{
+		for(int pass=0; pass<2; ++pass) {
+			int columns = columnCount(matrix);
+			if(columns == 0)
+				return matrix;
+
+			EigenDecomposition eigen = new EigenDecomposition(new Array2DRowRealMatrix(gram(matrix, columns), false));
+			double[] values = eigen.getRealEigenvalues();
+
+			double maxValue = 0;
+			for(double value : values) {
+				maxValue = Math.max(maxValue, value);
+			}
+
+			List<Integer> kept = new ArrayList<Integer>();
+			for(int c=0; c<values.length; ++c) {
+				if(values[c] > maxValue * 1e-12)
+					kept.add(c);
+			}
+
+			double[][] transform = new double[columns][kept.size()];
+			for(int k=0; k<kept.size(); ++k) {
+				double[] eigenvector = eigen.getEigenvector(kept.get(k)).toArray();
+				double scale = 1 / Math.sqrt(values[kept.get(k)]);
+				for(int c=0; c<columns; ++c) {
+					transform[c][k] = eigenvector[c] * scale;
+				}
+			}
+
+			matrix = multiply(matrix, transform);
+		}
+		return matrix;
+	}
+
+	// transposed matrix times the matrix, the rows are added up in blocks on several threads
+	private static double[][] gram(double[][] matrix, int columns)
+	{
+		int blockSize = 1024;
+		int blocks = (matrix.length + blockSize - 1) / blockSize;
+
+		return IntStream.range(0, blocks).parallel().mapToObj(block -> {
+			double[][] gram = new double[columns][columns];
+			for(int r=block * blockSize; r<Math.min(matrix.length, (block + 1) * blockSize); ++r) {
+				double[] row = matrix[r];
+				for(int c1=0; c1<columns; ++c1) {
+					if(row[c1] != 0)
+						addScaled(gram[c1], row[c1], row);
+				}
+			}
+			return gram;
+		}).reduce((gram1, gram2) -> {
+			for(int c=0; c<columns; ++c) {
+				addScaled(gram1[c], 1, gram2[c]);
+			}
+			return gram1;
+		}).orElse(new double[columns][columns]);
+	}
+
+	// dense product, rows on several threads
+	private static double[][] multiply(double[][] matrix, double[][] other)
+	{
+		int columns = columnCount(other);
+		double[][] result = new double[matrix.length][columns];
+
+		IntStream.range(0, matrix.length).parallel().forEach(r -> {
+			double[] row = matrix[r];
+			for(int c=0; c<row.length; ++c) {
+				if(row[c] != 0)
+					addScaled(result[r], row[c], other[c]);
+			}
+		});
+		return result;
+	}
+
+	// floats of the rows, unit length if normalized and null for a zero row then
+	private static float[][] toFloat(double[][] matrix, boolean normalize)
+	{
+		float[][] result = new float[matrix.length][];
+
+		for(int r=0; r<matrix.length; ++r) {
+			double norm = 1;
+			if(normalize) {
+				norm = Math.sqrt(dot(matrix[r], matrix[r]));
+				if(norm == 0)
+					continue;
+			}
+
+			result[r] = new float[matrix[r].length];
+			for(int c=0; c<result[r].length; ++c) {
+				result[r][c] = (float)(matrix[r][c] / norm);
+			}
+		}
+		return result;
+	}
+
+	private static double dot(double[] vector1, double[] vector2)
+	{
+		double dot = 0;
+		for(int c=0; c<vector1.length; ++c) {
+			dot += vector1[c] * vector2[c];
+		}
+		return dot;
+	}
+
+	// Safe to call from several threads at once, the query sees the space of the last build
+	@Override
+	public List<String> LsiQuerySearch(String query) throws IOException
+	{
+		List<String> docs = new ArrayList<String>();
+
+		long startTime = System.nanoTime();
+
+		SemanticSpace space = this.space;
+		if(space == null)
+			throw new IllegalStateException("Semantic space is not built");
+
+		//query folded in like a document, from its weighted term vectors
+		Map<Integer, Long> frequencies = new TreeMap<Integer, Long>();  // term id : frequency
+		try(TokenStream stream = standardAnalyzer.tokenStream("data", query)) {
+			CharTermAttribute termAttribute = stream.addAttribute(CharTermAttribute.class);
+			stream.reset();
+			while(stream.incrementToken()) {
+				Integer id = space.termIds.get(termAttribute.toString());
+				if(id != null)
+					frequencies.merge(id, 1L, Long::sum);
+			}
+			stream.end();
+		}
+
+		double[] queryVector = foldIn(space, frequencies);
+
+		if(dot(queryVector, queryVector) > 0) {
+			for(int doc : nearestDocuments(space, queryVector)) {
+				docs.add(space.fileNames[doc]);
+			}
+			System.out.println("Query: " + query + "\nSearch results: \n" + String.join(System.lineSeparator(), docs));
+		}
+		else {
+			System.out.println("Query:" + query + "- No document matches the query!");
+		}
+
+		long elapsed = System.nanoTime() - startTime;
+		queryTime.addAndGet(elapsed);
+		queryCount.incrementAndGet();
+
+		if(elapsed / 1000000.0 > latencyTarget) {
+			slowQueryCount.incrementAndGet();
+			System.out.println("SVD LSI query over the latency target: " + elapsed / 1000000 + " ms, " + query);
+		}
+
+		return docs;
+	}
+
+	// the QUERYDOC_COUNT documents closest to the query vector by cosine, best first. Equal scores keep the document order.
+	private List<Integer> nearestDocuments(SemanticSpace space, double[] queryVector)
+	{
+		if(space.store != null)
+			return space.store.nearest(queryVector, QUERYDOC_COUNT, rerankCount);
+
+		int count = space.docVectors.length;
+		double[] scores = new double[count];
+
+		//lowest score on top, the later document of equal scores goes first
+		PriorityQueue<Integer> nearest = new PriorityQueue<Integer>(QUERYDOC_COUNT + 1,
+				(doc1, doc2) -> (scores[doc1] != scores[doc2]) ? Double.compare(scores[doc1], scores[doc2]) : Integer.compare(doc2, doc1));
+
+		for(int doc=0; doc<count; ++doc) {
+			float[] docVector = space.docVectors[doc];
+			if(docVector == null)
+				continue;  //document without terms
+
+			double score = 0;
+			for(int c=0; c<docVector.length; ++c) {
+				score += queryVector[c] * docVector[c];
+			}
+			scores[doc] = score;
+
+			nearest.add(doc);
+			if(nearest.size() > QUERYDOC_COUNT)
+				nearest.poll();
+		}
+
+		List<Integer> docs = new ArrayList<Integer>(nearest.size());
+		while(!nearest.isEmpty()) {
+			docs.add(nearest.poll());
+		}
+		Collections.reverse(docs);
+		return docs;
+	}
+
+	// singular values of the last build, largest first
+	public double[] getSingularValues()
+	{
+		SemanticSpace space = this.space;
+		return (space != null) ? space.singularValues.clone() : new double[0];
+	}
+
+	@Override
+	public synchronized void setArtifactCache(ArtifactCache artifactCache) {
+		this.artifactCache = artifactCache;
+	}
+
+	// keeps the document vectors of the next builds as bytes in a memory mapped store instead of floats on the heap
+	public synchronized void setQuantized(boolean quantized)
+	{
+		if(quantized != this.quantized && space != null)
+			vectorsCurrent = false;  //the vectors move on the next build
+		this.quantized = quantized;
+	}
+
+	// Best documents by the bytes of the store that are ranked again by their exact vectors, 0 ranks by the bytes
+	// only and writes the next stores without exact vectors. A store written without them is written again with
+	// them on the next build.
+	public synchronized void setRerankCount(int rerankCount)
+	{
+		if(rerankCount > 0 && space != null && space.store != null && !space.store.hasExactVectors())
+			vectorsCurrent = false;
+		this.rerankCount = rerankCount;
+	}
+
+	@Override
+	public synchronized void setDriftThreshold(double driftThreshold) {
+		this.driftThreshold = driftThreshold;
+	}
+
+	// milliseconds a query should take at most, slower queries are reported
+	public void setLatencyTarget(double latencyTarget) {
+		this.latencyTarget = latencyTarget;
+	}
+
+	@Override
+	public double getLatencyTarget() {
+		return latencyTarget;
+	}
+
+	@Override
+	public double getAverageQueryLatency()
+	{
+		int count = queryCount.get();
+		return (count > 0) ? queryTime.get() / 1000000.0 / count : 0;
+	}
+
+	@Override
+	public int getSlowQueryCount() {
+		return slowQueryCount.get();
+	}
+
+	@Override
+	public double getBuildTime() {
+		return buildTime / 1000000.0;
+	}
+
+	// term and document vectors of floats and the idf of the terms, without the document vectors of a store
+	@Override
+	public long getModelSize()
+	{
+		SemanticSpace space = this.space;
+		if(space == null)
+			return 0;
+
+		int docCount = (space.store != null) ? 0 : space.docVectors.length;
+		return ((long)space.termVectors.length + docCount) * space.rank() * 4 + (long)space.idf.length * 4;
+	}
+}
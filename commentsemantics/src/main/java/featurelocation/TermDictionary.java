@@ -0,0 +1,170 @@
+package featurelocation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.util.CharArraySet;
+
+// Corpus wide dictionary of index terms, every term has a dense int id. Documents are analyzed once
+// into term ids and every FL technique indexes that form instead of analyzing the joined tokens again.
+// Each distinct document token is analyzed only once. Safe to use from the parallel parser workers.
+public class TermDictionary
+{
+	// Terms of one document token as the standard analyzer finds them in the joined document.
+	// Stop words are kept, the VSM techniques drop them and LSI indexes them.
+	private static class TokenTerms
+	{
+		private final int[] termIds;
+		private final int[] positionIncrements;
+		private final int[] startOffsets;
+		private final int[] endOffsets;
+		private final int skippedPositions;  // positions of too long words at the end of the token
+
+		private TokenTerms(int[] termIds, int[] positionIncrements, int[] startOffsets, int[] endOffsets, int skippedPositions)
+		{
+			this.termIds = termIds;
+			this.positionIncrements = positionIncrements;
+			this.startOffsets = startOffsets;
+			this.endOffsets = endOffsets;
+			this.skippedPositions = skippedPositions;
+		}
+	}
+
+	private final Map<String, Integer> ids = new HashMap<String, Integer>();  // term : id
+	private final List<String> terms = new ArrayList<String>();               // id : term
+	private final BitSet stopWords = new BitSet();                            // ids of standard analyzer stop words
+
+	private final Map<String, TokenTerms> tokenTerms = new ConcurrentHashMap<String, TokenTerms>();
+
+	private final StandardAnalyzer analyzer = new StandardAnalyzer(CharArraySet.EMPTY_SET);
+
+	public synchronized int id(String term)
+	{
+		Integer id = ids.get(term);
+		if(id == null) {
+			id = terms.size();
+			ids.put(term, id);
+			terms.add(term);
+
+			if(StandardAnalyzer.STOP_WORDS_SET.contains(term))
+				stopWords.set(id);
+		}
+		return id;
+	}
+
+	public synchronized String term(int id) {
+		return terms.get(id);
+	}
+
+	public synchronized boolean isStopWord(int id) {
+		return stopWords.get(id);
+	}
+
+	public synchronized int size() {
+		return terms.size();
+	}
+
+	public synchronized void clear()
+	{
+		ids.clear();
+		terms.clear();
+		stopWords.clear();
+		tokenTerms.clear();
+	}
+
+	// Term ids, positions and offsets of the document as the standard analyzer finds them in String.join(" ", tokens)
+	public TermDocument encode(List<String> tokens)
+	{
+		List<TokenTerms> analyzed = new ArrayList<TokenTerms>(tokens.size());
+		int count = 0;
+		for(String token : tokens) {
+			TokenTerms terms = analyze(token);
+			analyzed.add(terms);
+			count += terms.termIds.length;
+		}
+
+		int[] termIds = new int[count];
+		int[] positions = new int[count];
+		int[] startOffsets = new int[count];
+		int[] endOffsets = new int[count];
+
+		int term = 0;
+		int position = -1;
+		int offset = 0;
+
+		for(int i=0; i<analyzed.size(); ++i) {
+			TokenTerms terms = analyzed.get(i);
+
+			for(int j=0; j<terms.termIds.length; ++j) {
+				position += terms.positionIncrements[j];
+
+				termIds[term] = terms.termIds[j];
+				positions[term] = position;
+				startOffsets[term] = offset + terms.startOffsets[j];
+				endOffsets[term] = offset + terms.endOffsets[j];
+				++term;
+			}
+
+			position += terms.skippedPositions;
+			offset += tokens.get(i).length() + 1;  //tokens are joined with a space
+		}
+
+		int length = tokens.isEmpty() ? 0 : offset - 1;
+		return new TermDocument(this, tokens.size(), termIds, positions, startOffsets, endOffsets, position, length);
+	}
+
+	private TokenTerms analyze(String token)
+	{
+		TokenTerms terms = tokenTerms.get(token);
+		if(terms != null)
+			return terms;
+
+		List<String> found = new ArrayList<String>();
+		List<int[]> attributes = new ArrayList<int[]>();  // position increment, start and end offset
+		int skippedPositions;
+
+		try(TokenStream stream = analyzer.tokenStream("data", token)) {
+
+			CharTermAttribute termAttribute = stream.addAttribute(CharTermAttribute.class);
+			PositionIncrementAttribute positionAttribute = stream.addAttribute(PositionIncrementAttribute.class);
+			OffsetAttribute offsetAttribute = stream.addAttribute(OffsetAttribute.class);
+
+			stream.reset();
+			while(stream.incrementToken()) {
+				found.add(termAttribute.toString());
+				attributes.add(new int[] {positionAttribute.getPositionIncrement(), offsetAttribute.startOffset(), offsetAttribute.endOffset()});
+			}
+			stream.end();
+			skippedPositions = positionAttribute.getPositionIncrement();
+		}
+		catch(IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		int[] termIds = new int[found.size()];
+		int[] positionIncrements = new int[found.size()];
+		int[] startOffsets = new int[found.size()];
+		int[] endOffsets = new int[found.size()];
+
+		for(int i=0; i<termIds.length; ++i) {
+			termIds[i] = id(found.get(i));
+			positionIncrements[i] = attributes.get(i)[0];
+			startOffsets[i] = attributes.get(i)[1];
+			endOffsets[i] = attributes.get(i)[2];
+		}
+
+		terms = new TokenTerms(termIds, positionIncrements, startOffsets, endOffsets, skippedPositions);
+		tokenTerms.put(token, terms);
+		return terms;
+	}
+}
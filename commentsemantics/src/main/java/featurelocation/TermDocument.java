@@ -0,0 +1,141 @@
+package featurelocation;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+
+// Document of one source file as term ids of the term dictionary, with the positions and offsets
+// the standard analyzer gives them in the joined document tokens.
+public class TermDocument
+{
+	private final TermDictionary dictionary;
+	private final int tokenCount;  // document tokens before analysis
+	
+	private final int[] termIds;
+	private final int[] positions;
+	private final int[] startOffsets;
+	private final int[] endOffsets;
+	private final int endPosition;
+	private final int length;      // length of the joined document tokens
+	
+	private final Map<String, TermDocument> sources;  // index field : document of a comment source, null if the sources are not indexed
+	
+	TermDocument(TermDictionary dictionary, int tokenCount, int[] termIds, int[] positions, int[] startOffsets, int[] endOffsets, int endPosition, int length)
+	{
+		this(dictionary, tokenCount, termIds, positions, startOffsets, endOffsets, endPosition, length, null);
+	}
+	
+	private TermDocument(TermDictionary dictionary, int tokenCount, int[] termIds, int[] positions, int[] startOffsets, int[] endOffsets, int endPosition, int length,
+			Map<String, TermDocument> sources)
+	{
+		this.dictionary = dictionary;
+		this.tokenCount = tokenCount;
+		this.termIds = termIds;
+		this.positions = positions;
+		this.startOffsets = startOffsets;
+		this.endOffsets = endOffsets;
+		this.endPosition = endPosition;
+		this.length = length;
+		this.sources = sources;
+	}
+	
+	// the same document with the documents of its comment sources, indexed in a field each
+	public TermDocument withSources(Map<String, TermDocument> sources)
+	{
+		return new TermDocument(dictionary, tokenCount, termIds, positions, startOffsets, endOffsets, endPosition, length, sources);
+	}
+	
+	// documents of the comment sources by index field, null if the sources are not indexed
+	public Map<String, TermDocument> getSources() {
+		return sources;
+	}
+	
+	// true if the parser found no tokens for the file
+	public boolean isEmpty() {
+		return tokenCount == 0;
+	}
+	
+	public int[] getTermIds() {
+		return termIds;
+	}
+	
+	public TermDictionary getDictionary() {
+		return dictionary;
+	}
+	
+	// terms of the document separated by spaces, analyzing the text again gives the same terms
+	public String getText()
+	{
+		StringBuilder text = new StringBuilder();
+		for(int termId : termIds) {
+			if(text.length() > 0)
+				text.append(' ');
+			text.append(dictionary.term(termId));
+		}
+		return text.toString();
+	}
+	
+	// Token stream for indexing the document, gives the same terms, positions and offsets as
+	// analyzing the joined document tokens with the standard analyzer.
+	public TokenStream tokenStream(boolean removeStopWords)
+	{
+		return new TermStream(removeStopWords);
+	}
+	
+	private class TermStream extends TokenStream
+	{
+		private final boolean removeStopWords;
+		
+		private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+		private final PositionIncrementAttribute positionAttribute = addAttribute(PositionIncrementAttribute.class);
+		private final OffsetAttribute offsetAttribute = addAttribute(OffsetAttribute.class);
+		
+		private int next = 0;
+		private int lastPosition = -1;
+		
+		private TermStream(boolean removeStopWords)
+		{
+			this.removeStopWords = removeStopWords;
+		}
+		
+		@Override
+		public boolean incrementToken()
+		{
+			clearAttributes();
+			
+			while(next < termIds.length) {
+				int term = next++;
+				if(removeStopWords && dictionary.isStopWord(termIds[term]))
+					continue;  //skipped positions are added to the next term like the stop filter does
+				
+				termAttribute.setEmpty().append(dictionary.term(termIds[term]));
+				positionAttribute.setPositionIncrement(positions[term] - lastPosition);
+				offsetAttribute.setOffset(startOffsets[term], endOffsets[term]);
+				lastPosition = positions[term];
+				return true;
+			}
+			
+			return false;
+		}
+		
+		@Override
+		public void end() throws IOException
+		{
+			super.end();
+			positionAttribute.setPositionIncrement(endPosition - lastPosition);
+			offsetAttribute.setOffset(length, length);
+		}
+		
+		@Override
+		public void reset() throws IOException
+		{
+			super.reset();
+			next = 0;
+			lastPosition = -1;
+		}
+	}
+}
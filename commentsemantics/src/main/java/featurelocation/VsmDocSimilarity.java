@@ -3,140 +3,124 @@
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
-import org.apache.commons.math3.linear.ArrayRealVector;
-import org.apache.commons.math3.linear.RealVector;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.FieldType;
-import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexOptions;
-import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.index.Terms;
-import org.apache.lucene.index.TermsEnum;
-import org.apache.lucene.search.similarities.DefaultSimilarity;
-//import org.apache.lucene.search.similarities.ClassicSimilarity;
-import org.apache.lucene.search.similarities.TFIDFSimilarity;
-import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.search.IndexSearcher;
 
 
-public class VsmDocSimilarity implements FeatureLocation 
+// Document similarity over the corpus index
+public class VsmDocSimilarity 
 {
 	private final int SIMILARITYDOC_COUNT = 50;
 	
-	private StandardAnalyzer standardAnalyzer = null;
-	private Directory directory = null;
-	private IndexWriter writer = null;
-	private FieldType fieldType = null;
+	private final CorpusIndex corpusIndex;
+	private final TermDictionary termDictionary;  // term ids of the document vectors
 	
-	public VsmDocSimilarity()
+	private volatile List<String> fields = Collections.singletonList("data");  // index fields compared as one field
+	
+	// Document vectors with the similar documents found from them, built once for every index generation
+	// and fields. A search still running on the vectors of an older generation fills the cache of those
+	// vectors, never the one of the current generation.
+	private static class GenerationVectors
+	{
+		private final DocumentVectors vectors;
+		private final long generation;
+		private final List<String> fields;
+		private final Map<String, List<String>> similarDocumentsCache = new ConcurrentHashMap<String, List<String>>();  // file name : similar documents
+		
+		private GenerationVectors(DocumentVectors vectors, long generation, List<String> fields)
+		{
+			this.vectors = vectors;
+			this.generation = generation;
+			this.fields = fields;
+		}
+	}
+	
+	private GenerationVectors current = null;
+	
+	public VsmDocSimilarity(CorpusIndex corpusIndex, TermDictionary termDictionary)
 	{
-		reset();
+		this.corpusIndex = corpusIndex;
+		this.termDictionary = termDictionary;
 	}
 	
+	// Fields of the comment sources of the search options on an index of comment sources, the vectors
+	// are built again for other fields. Null compares the one data field of the other indexes.
+	public void setSearchFields(List<String> fields)
+	{
+		this.fields = (fields != null) ? new ArrayList<String>(fields) : Collections.singletonList("data");
+	}
 	
-	@Override
-	public void prepareDocument(String fileName, List<String> data)
+	// Safe to call from several threads at once
+	public List<String> vsmGetSimilarDocuments(String fileName) throws IOException
 	{	
-		Field field1 = new Field("filename", fileName, fieldType);
-		Field field2 = new Field("data", String.join(" ", data), fieldType);
-
-		Document document = new Document();
-		document.add(field1);
-		document.add(field2);
-
-		try {
-			writer.addDocument(document);
-
-		} catch (IOException e) {
-			e.printStackTrace();
+		GenerationVectors vectors = getVectors();
+		
+		List<String> similarDocuments = vectors.similarDocumentsCache.get(fileName);
+		if(similarDocuments == null) {
+			similarDocuments = findSimilarDocuments(vectors.vectors, fileName);
+			vectors.similarDocumentsCache.putIfAbsent(fileName, similarDocuments);
 		}
+		
+		System.out.println("Similar documets are:");
+		System.out.println(String.join(System.lineSeparator(), similarDocuments));
+		
+		return new ArrayList<String>(similarDocuments);
 	}
 	
-	@Override
-	public void reset()
+	// Document vectors of the committed index. The generation is read before the searcher commits, a document
+	// prepared in between is then in the vectors of the older generation and only builds them again once more.
+	private synchronized GenerationVectors getVectors() throws IOException
 	{
+		long generation = corpusIndex.getGeneration();
+		IndexSearcher searcher = corpusIndex.acquireSearcher();  //commits the documents added or removed
+		
 		try {
-			standardAnalyzer = new StandardAnalyzer();
-			directory = new RAMDirectory();
-			
-			IndexWriterConfig config = new IndexWriterConfig(standardAnalyzer); 
-			writer = new IndexWriter(directory, config);
+			List<String> fields = this.fields;
 			
-			//initialize field
-			fieldType = new FieldType();
-			fieldType.setStoreTermVectors(true);
-			fieldType.setTokenized(true);
-			fieldType.setStored(true);
-			fieldType.setStoreTermVectorOffsets(true);
-			fieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+			if(current == null || current.generation != generation || !fields.equals(current.fields)) {
+				current = new GenerationVectors(DocumentVectors.build(searcher.getIndexReader(), fields, termDictionary), generation, fields);
+			}
+		}
+		finally {
+			corpusIndex.releaseSearcher(searcher);
 		}
-		catch(IOException e) {
-			e.printStackTrace();
-		}	
+		
+		return current;
 	}
 	
-	public List<String> vsmGetSimilarDocuments(String fileName) throws IOException
+	private List<String> findSimilarDocuments(DocumentVectors vectors, String fileName)
 	{	
 		List<String> similarDocuments = new ArrayList<String>();
-		
-		writer.close();
-		
-		//if (writer.isOpen())			
-
-		IndexReader reader = DirectoryReader.open(directory);		
-
-		List<RealVector> realVectors = new ArrayList<RealVector>();
-		ArrayList<String> allTerms = getAllTerms(reader);
-
-		Integer fileindex = 0;
-
-		for (int i = 0; i < reader.numDocs(); i++) 
-		{
-			Terms vector = reader.getTermVector(i, "data");   
-			realVectors.add(getRealVector(vector, allTerms, reader));
-		
-			//find the index of file name
-			if (reader.document(i).getField("filename").stringValue().compareToIgnoreCase(fileName) == 0) 
-				fileindex = i;			
-		}
 
-		RealVector rvInputFile = realVectors.get(fileindex); // get the real vector associated with input file
+		int fileindex = Math.max(vectors.getDocId(fileName), 0);
 
-		Map<Double, Integer> cosineMap = new HashMap<Double, Integer>(); // cosine value : index
+		// highest cosine values : index, documents with the same cosine value keep the last one
+		TreeMap<Double, Integer> cosineMap = new TreeMap<Double, Integer>();
 
-		for (int i = 0; i < realVectors.size(); i++) 
+		for (int i = 0; i < vectors.size(); i++) 
 		{
 			if (i == fileindex)
 				continue; // do not compare self
 
-			try {
-
-				double cosineValue = rvInputFile.cosine(realVectors.get(i));
-				cosineMap.put(cosineValue, i);
-
-			} catch (ArithmeticException e) { }
+			double cosineValue = vectors.cosine(fileindex, i);
+			if (Double.isNaN(cosineValue))
+				continue;  //no terms to compare
+			
+			cosineMap.put(cosineValue, i);
+			if (cosineMap.size() > SIMILARITYDOC_COUNT)
+				cosineMap.pollFirstEntry();
 		}
 
 		// we have the cosinemap ready, now find the highest similarity document
-		List<Double> sortedCosine = new ArrayList<Double>(cosineMap.keySet());
-		Collections.sort(sortedCosine, Collections.reverseOrder());
+		List<Double> sortedCosine = new ArrayList<Double>(cosineMap.descendingKeySet());
 		
-		int numDocuments = SIMILARITYDOC_COUNT;
-		if(sortedCosine.size() < SIMILARITYDOC_COUNT)
-			numDocuments = sortedCosine.size(); 
+		int numDocuments = sortedCosine.size();
 
-		System.out.println("Finding similar documents to: " + reader.document(fileindex).getField("filename").stringValue());
+		System.out.println("Finding similar documents to: " + vectors.getFileName(fileindex));
 		
 		similarDocuments.add(fileName);
 		
@@ -144,65 +128,12 @@ public class VsmDocSimilarity implements FeatureLocation
 		{
 			Double cos_key = sortedCosine.get(i);
 			if(cos_key > 0) { 
-				similarDocuments.add(reader.document(cosineMap.get(cos_key)).getField("filename").stringValue());
+				similarDocuments.add(vectors.getFileName(cosineMap.get(cos_key)));
 				System.out.println("document " + i + " cosine score:" + cos_key);
 			}
 		}
-				
-		System.out.println("Similar documets are:");
-		System.out.println(String.join(System.lineSeparator(), similarDocuments));
-		
-		reader.close();
 		
 		return similarDocuments;
 	}
-	
-	
-	static RealVector getRealVector(Terms vector, ArrayList<String> allTerms, IndexReader reader) throws IOException 
-	{
-		RealVector R_Vector = new ArrayRealVector((int) allTerms.size());
-		
-		if(vector == null)
-			return R_Vector;
-
-		TermsEnum terms = vector.iterator(null);
-
-		int n=0;
-
-		while(terms.next() != null) 
-		{
-			n = allTerms.indexOf(terms.term().utf8ToString());
-	
-			TFIDFSimilarity  kk1 = new DefaultSimilarity();
-			Term term = new Term("data", terms.term().utf8ToString() );
-			
-			double tf_idf = kk1.idf(reader.docFreq(term), reader.numDocs())*kk1.tf(terms.totalTermFreq());
-			R_Vector.setEntry(n, tf_idf);
-		}
-		
-		return R_Vector;
-
-	}
-	
-	static ArrayList<String> getAllTerms(IndexReader reader) throws IOException 
-	{
-		Set<String> allTerm = new HashSet<String>();
-
-		for(int i=0;i<reader.numDocs();i++) 
-		{
-			Terms vector = reader.getTermVector(i, "data");
-			
-			if(vector == null)
-				continue;
-	
-			TermsEnum terms = vector.iterator(null);		 
-			while(terms.next() != null) {
-				allTerm.add(terms.term().utf8ToString());
-			}			
-		}
-
-		ArrayList<String> res = new ArrayList<String>(allTerm);
-		return res;
-	}
 
 }
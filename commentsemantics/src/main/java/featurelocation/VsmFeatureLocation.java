@@ -2,126 +2,107 @@ package featurelocation;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.FieldType;
-import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexOptions;
-import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.RAMDirectory;
 
-public class VsmFeatureLocation implements FeatureLocation 
+// Ranked query search over the corpus index
+public class VsmFeatureLocation 
 {	
 	private final int QUERYDOC_COUNT = 50;
 	
-	private StandardAnalyzer standardAnalyzer = null;
-	private Directory directory = null;
-	private IndexWriter writer = null;
-	private FieldType fieldType = null;
+	private final CorpusIndex corpusIndex;
+	
+	private final StandardAnalyzer standardAnalyzer = new StandardAnalyzer();
+	private final ThreadLocal<QueryParser> queryParsers = ThreadLocal.withInitial(() -> new QueryParser("data", standardAnalyzer));  //query parsers are not thread safe
+	private volatile Map<String, Float> fieldBoosts = null;  // fields of the comment sources searched, null searches the data field
+	
+	private final AtomicLong queryTime = new AtomicLong();  // nanoseconds of all queries
+	private final AtomicInteger queryCount = new AtomicInteger();
 
-	public VsmFeatureLocation()
+	public VsmFeatureLocation(CorpusIndex corpusIndex)
 	{
-		reset();
+		this.corpusIndex = corpusIndex;
 	}
-
-	@Override
-	public void prepareDocument(String fileName, List<String> data) 
+	
+	// Fields of the comment sources of the search options and their boosts, on an index of comment sources.
+	// The terms of the query are searched in the fields as one field, which ranks the documents like a data
+	// field indexed with these search options. Null searches the one data field of the other indexes.
+	public void setSearchFields(Map<String, Float> fieldBoosts)
 	{
-		if(data.isEmpty())
-			return;
-		
-		Field field1 = new Field("filename", fileName, fieldType);
-		Field field2 = new Field("data", String.join(" ", data), fieldType);
-
-		Document document = new Document();
-		document.add(field1);
-		document.add(field2);
-
-		try {
-			writer.addDocument(document);
-
-		} catch (IOException e) {
-			e.printStackTrace();
-		}		
-	}
-
-	@Override
-	public void reset() 
-	{		
-		try {
-			standardAnalyzer = new StandardAnalyzer();
-			directory = new RAMDirectory();
-			
-			IndexWriterConfig config = new IndexWriterConfig(standardAnalyzer); 
-			writer = new IndexWriter(directory, config);
-			
-			//initialize field
-			fieldType = new FieldType();
-			fieldType.setStoreTermVectors(true);
-			fieldType.setTokenized(true);
-			fieldType.setStored(true);
-			fieldType.setStoreTermVectorOffsets(true);
-			fieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
-		}
-		catch(IOException e) {
-			e.printStackTrace();
-		}	
-		
+		this.fieldBoosts = (fieldBoosts != null) ? Collections.unmodifiableMap(new LinkedHashMap<String, Float>(fieldBoosts)) : null;
 	}
 	
+	// Safe to call from several threads at once
 	public List<String> VsmQuerySearch(String query) throws IOException
 	{
 		List<String> docs = new ArrayList<String>();
 		
+		long startTime = System.nanoTime();
+		
 		try {
 
-			writer.close();
+			IndexSearcher searcher = corpusIndex.acquireSearcher();
 
-			IndexReader reader = DirectoryReader.open(directory);
-			IndexSearcher searcher = new IndexSearcher(reader);
-
-			QueryParser parser = new QueryParser("data", standardAnalyzer);
+			try {
+				QueryParser parser = queryParsers.get();
+				Query parsedQuery = parser.parse(query);
+				
+				Map<String, Float> fieldBoosts = this.fieldBoosts;
+				if(fieldBoosts != null)
+					parsedQuery = SourceTermQuery.forSources(parsedQuery, fieldBoosts, standardAnalyzer);
 
-			TopDocs results = null;
+				TopDocs results = null;
 
-			// create the query object and search the document
-			results = searcher.search(parser.parse(query), QUERYDOC_COUNT);
-			
-			int numDocuments = QUERYDOC_COUNT;
-			if(results.totalHits < QUERYDOC_COUNT)
-				numDocuments = results.totalHits; 
-			
-			if(numDocuments > 0) {
+				// create the query object and search the document
+				results = searcher.search(parsedQuery, QUERYDOC_COUNT);
+				
+				int numDocuments = QUERYDOC_COUNT;
+				if(results.totalHits < QUERYDOC_COUNT)
+					numDocuments = results.totalHits; 
 				
-				for(int i=0; i< numDocuments; ++i)
-				{
-					docs.add(reader.document(results.scoreDocs[i].doc).getField("filename").stringValue());	
+				if(numDocuments > 0) {
+					
+					for(int i=0; i< numDocuments; ++i)
+					{
+						docs.add(searcher.doc(results.scoreDocs[i].doc).getField("filename").stringValue());	
+					}
+				}
+				else {
+					System.out.println("Query:" + query + "- No document matches the query!");
 				}
 			}
-			else {
-				System.out.println("Query:" + query + "- No document matches the query!");
+			finally {
+				corpusIndex.releaseSearcher(searcher);
 			}
-			
 						
 			System.out.println("Query: " + query + "\nSearch results: \n" + String.join(System.lineSeparator(), docs));
-
-			reader.close();
 		}	
 		catch (IOException | ParseException e) {
 			e.printStackTrace();
 		}
+		
+		queryTime.addAndGet(System.nanoTime() - startTime);
+		queryCount.incrementAndGet();
 
 		return docs;
 	}
+	
+	// average milliseconds of the queries so far
+	public double getAverageQueryLatency()
+	{
+		int count = queryCount.get();
+		return (count > 0) ? queryTime.get() / 1000000.0 / count : 0;
+	}
 
 }
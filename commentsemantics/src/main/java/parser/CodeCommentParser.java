@@ -2,33 +2,31 @@ package parser;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import queryresult.ResultStore;
 
+// One parser per thread. Only the owner writes excluded comments to its store, workers buffer
+// theirs until the owner takes them. The store is given by the caller: owners parsing at once,
+// like the runs of a batch, each need a store of their own directory for their CommentsExcluded.
 public class CodeCommentParser 
 {	
 	private final double THRESHOLD = 50;
 	
-	private static final Pattern SEMI_COLON = Pattern.compile(";");
-	private static final Pattern ROUTINE_CALL = Pattern.compile("(\\w+\\s*\\.)*\\s*\\w+\\s*\\(([^\\)]*)\\)(\\s*|\\s*;)");
-	private static final Pattern SCOPE = Pattern.compile("(\\{|\\})");
-	private static final Pattern OPERANDS = Pattern.compile("(\\+|\\-|&&|\\||<|>|=|:|_)");
-	private static final Pattern KEYWORDS = Pattern.compile("(abstract|assert|boolean|break|byte|case|catch" +
+	// code keywords, the other code patterns are built into the scanner
+	static final Pattern KEYWORDS = Pattern.compile("(abstract|assert|boolean|break|byte|case|catch" +
             "char|class|const|continue|default|do|double|else|enum|extends|final|finally|flaot|for|goto|if" +
             "|implements|import|instanceof|int|interface|long|native|new|package|private|protected|public|return" +
             "|short|static|trictfp|super|switch|synchronized|this|throw|throws|transient|try|void|volatile|while)");
     
-    List<Pattern> patternList = new ArrayList<>();
+    // the excluded comments go to the given store
+    public CodeCommentParser(ResultStore resultStore)
     {
-        patternList.add(SEMI_COLON);
-        patternList.add(KEYWORDS);
-        patternList.add(OPERANDS);
-        patternList.add(ROUTINE_CALL);
-        patternList.add(SCOPE);
+    	this.resultStore = resultStore;
     }
     
+    private final CodeCommentScanner scanner = new CodeCommentScanner(KEYWORDS);
+    
     public void Begin()
     {
     	resultStore.OpenStore("CommentsExcluded");
@@ -39,56 +37,76 @@ public class CodeCommentParser
     	resultStore.CloseStore();
     }
     
-    private final ResultStore resultStore = new ResultStore();
+    private final ResultStore resultStore;
+    
+    // worker parsers buffer the excluded comments instead of writing them to the store,
+    // the owner of the store writes them later in the file order
+    private List<String> excludedComments = null;
+    
+    public CodeCommentParser newWorker()
+    {
+    	CodeCommentParser worker = new CodeCommentParser(resultStore);
+    	worker.excludedComments = new ArrayList<String>();
+    	return worker;
+    }
+    
+    public List<String> takeExcludedComments()
+    {
+    	if(excludedComments == null || excludedComments.isEmpty())
+    		return new ArrayList<String>();
+    	
+    	List<String> taken = excludedComments;
+    	excludedComments = new ArrayList<String>();
+    	return taken;
+    }
+    
+    public void writeExcludedComments(List<String> comments)
+    {
+    	for(String comment : comments) {
+    		resultStore.WriteData(comment);
+    	}
+    }
+    
+    // comment ignored for having too much code, stored for later review
+    public void excludeComment(String comment)
+    {
+    	if(excludedComments != null)
+    		excludedComments.add(comment);
+    	else
+    		resultStore.WriteData(comment);
+    }
     
     // Parse the comments and remove commented codes in it.
  	// Returns comments with out code, if commented code is less than 50% of total comments
  	// If commented code is more than 50% of total comments then returns empty string
  	public String parseCodeComments(String comment)
  	{
- 		String orginalData = comment;
+ 		String result = removeCodeComments(comment);
  		
- 		String result = "";
+ 		if(result == null) {
+ 			excludeComment(comment);  //ignoring the entire comment when code is more than 50% of comments
+ 			result = "";
+ 		}
  		
- 		StringBuilder evaluationString = new StringBuilder();
-    	
-        comment = comment.replaceAll("\\s+", " ");
-        double originalCharacterCount = comment.length();
-        
-        for(Pattern pattern: patternList){
-        	
-            List<String> matches = getMatches(pattern, comment);
-            
-            for(String match: matches){
-                evaluationString.append(match);
-            }
-            
-            comment = comment.replaceAll(pattern.pattern(), "");
-        }
-        
-        double percentage = ((double) evaluationString.length() / originalCharacterCount ) * 100L;
-
-        if(percentage <= THRESHOLD) {
-            result = comment;  //return net comments after removing the code
-        }
-        else {
-        	resultStore.WriteData(orginalData);  //ignoring the entire comment when code is more than 50% of comments
-        }
-        	
  		return result;
  	}
  	
- 	private List<String> getMatches(Pattern pattern, String input)
+ 	// Same as parseCodeComments without storing the excluded comment,
+ 	// returns null if commented code is more than 50% of total comments
+ 	public String removeCodeComments(String comment)
  	{
-        List<String> allMatches = new ArrayList<String>();
-        Matcher matcher = pattern.matcher(input);
-        
-        while (matcher.find()) { 
-        	allMatches.add(matcher.group()); 
-        }
-        
-        return allMatches;
-    }
+ 		String result = null;
+ 		
+ 		scanner.scan(comment);
+ 		
+ 		double originalCharacterCount = scanner.getOriginalLength();
+ 		double percentage = ((double) scanner.getCodeLength() / originalCharacterCount ) * 100L;
+ 		
+ 		if(percentage <= THRESHOLD) {
+ 			result = scanner.getText();  //return net comments after removing the code
+ 		}
+ 		
+ 		return result;
+ 	}
     
 }
-
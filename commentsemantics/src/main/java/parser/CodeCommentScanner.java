@@ -0,0 +1,278 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+// Hand written scanner for the code patterns of CodeCommentParser, which were regular expressions before
+// (kept as the reference of the tests). Every pattern is applied in one linear scan over a reused buffer, in
+// the order of the regular expressions and on the text the previous one left, so it finds exactly the same
+// matches. The code character count is the number of characters removed.
+// Not thread safe, every parser has its own scanner.
+public class CodeCommentScanner
+{
+	private final char[][][] keywords = new char[128][][];  // first character : keywords in alternation order
+
+	private char[] text = new char[256];
+	private int length;
+	private int originalLength;
+
+	public CodeCommentScanner(Pattern keywordPattern)
+	{
+		//"(abstract|assert|...)", a regular expression alternation tries the keywords in this order
+		String alternation = keywordPattern.pattern();
+		String[] words = alternation.substring(1, alternation.length() - 1).split("\\|");
+
+		List<List<char[]>> byFirstChar = new ArrayList<List<char[]>>();
+		for(int i=0; i<keywords.length; ++i) {
+			byFirstChar.add(new ArrayList<char[]>());
+		}
+		for(String word : words) {
+			byFirstChar.get(word.charAt(0)).add(word.toCharArray());
+		}
+		for(int i=0; i<keywords.length; ++i) {
+			if(!byFirstChar.get(i).isEmpty())
+				keywords[i] = byFirstChar.get(i).toArray(new char[0][]);
+		}
+	}
+
+	// Length of the comment after the white space runs are replaced by a space
+	public int getOriginalLength() {
+		return originalLength;
+	}
+
+	// Characters matched by the code patterns
+	public int getCodeLength() {
+		return originalLength - length;
+	}
+
+	public String getText() {
+		return new String(text, 0, length);
+	}
+
+	public void scan(String comment)
+	{
+		if(text.length < comment.length())
+			text = new char[comment.length()];
+
+		removeSemicolons(comment);
+		removeKeywords();
+		removeOperands();
+		removeRoutineCalls();
+	}
+
+	//"\\s+" replaced by a space, then SEMI_COLON
+	private void removeSemicolons(String comment)
+	{
+		int count = 0;
+		int out = 0;
+		boolean space = false;
+
+		for(int i=0; i<comment.length(); ++i) {
+			char c = comment.charAt(i);
+
+			if(isSpace(c)) {
+				if(!space) {
+					text[out++] = ' ';
+					++count;
+				}
+				space = true;
+				continue;
+			}
+
+			space = false;
+			++count;
+			if(c != ';')
+				text[out++] = c;
+		}
+
+		originalLength = count;
+		length = out;
+	}
+
+	// KEYWORDS, no word boundaries, the first keyword of the alternation matching at a position wins
+	private void removeKeywords()
+	{
+		int out = 0;
+		int i = 0;
+
+		while(i < length) {
+			char c = text[i];
+			int matched = 0;
+
+			if(c < keywords.length && keywords[c] != null) {
+				for(char[] keyword : keywords[c]) {
+					if(startsWith(i, keyword)) {
+						matched = keyword.length;
+						break;
+					}
+				}
+			}
+
+			if(matched > 0) {
+				i += matched;
+			}
+			else {
+				text[out++] = c;
+				++i;
+			}
+		}
+
+		length = out;
+	}
+
+	// OPERANDS
+	private void removeOperands()
+	{
+		int out = 0;
+		int i = 0;
+
+		while(i < length) {
+			char c = text[i];
+
+			if(c == '+' || c == '-' || c == '|' || c == '<' || c == '>' || c == '=' || c == ':' || c == '_') {
+				++i;
+			}
+			else if(c == '&' && i + 1 < length && text[i + 1] == '&') {
+				i += 2;
+			}
+			else {
+				text[out++] = c;
+				++i;
+			}
+		}
+
+		length = out;
+	}
+
+	// ROUTINE_CALL "(\\w+\\s*\\.)*\\s*\\w+\\s*\\(([^\\)]*)\\)(\\s*|\\s*;)", then SCOPE on the characters left.
+	// A match starting at p has only word characters, spaces and dots up to its "(", so that "(" is the first
+	// other character after p, and the match ends at the next ")" and the spaces after it. Whether p can
+	// start a match is decided scanning back from the "(", see firstCallStart.
+	private void removeRoutineCalls()
+	{
+		int out = 0;
+		int from = 0;  // where the regular expression would look for the next match
+		int close = -1;  // first ")" after the last "("
+
+		while(from < length) {
+			int open = from;
+			while(open < length && isCallChar(text[open]))
+				++open;
+
+			if(open == length || text[open] != '(') {
+				out = copyText(from, Math.min(open + 1, length), out);
+				from = open + 1;
+				continue;
+			}
+
+			if(close <= open) {
+				close = open + 1;
+				while(close < length && text[close] != ')')
+					++close;
+			}
+
+			if(close == length) {  //no routine call without a ")"
+				out = copyText(from, length, out);
+				break;
+			}
+
+			int start = firstCallStart(from, open);
+			if(start < 0) {
+				out = copyText(from, open + 1, out);
+				from = open + 1;
+				continue;
+			}
+
+			out = copyText(from, start, out);
+
+			int end = close + 1;
+			while(end < length && isSpace(text[end]))
+				++end;
+
+			from = end;
+		}
+
+		length = out;
+	}
+
+	// Leftmost start at or after from of a routine call with the "(" at open, -1 if there is none.
+	// The text before "(" must be (word spaces dot)* spaces word spaces. Scanning back that is: the spaces,
+	// the routine name, the spaces before it and then for every qualifier a dot, spaces and a word. A match
+	// can start anywhere in the routine name or the spaces before it, or anywhere in a qualifier word. Spaces
+	// are not allowed between a dot and the qualifier before it.
+	private int firstCallStart(int from, int open)
+	{
+		//the text before from is already overwritten, a start before it is not needed anyway
+		int nameEnd = open;
+		while(nameEnd > from && isSpace(text[nameEnd - 1]))
+			--nameEnd;
+
+		int nameStart = nameEnd;
+		while(nameStart > from && isWord(text[nameStart - 1]))
+			--nameStart;
+
+		if(nameStart == nameEnd)
+			return -1;
+
+		int start = nameStart;
+		while(start > from && isSpace(text[start - 1]))
+			--start;
+
+		int dot = start - 1;
+		while(dot >= from && text[dot] == '.') {
+			int wordEnd = dot;
+			while(wordEnd > from && isSpace(text[wordEnd - 1]))
+				--wordEnd;
+
+			int wordStart = wordEnd;
+			while(wordStart > from && isWord(text[wordStart - 1]))
+				--wordStart;
+
+			if(wordStart == wordEnd)
+				break;
+
+			start = wordStart;
+			dot = wordStart - 1;
+		}
+
+		return start;
+	}
+
+	// copies text outside the routine calls, SCOPE removes the braces
+	private int copyText(int start, int end, int out)
+	{
+		for(int i=start; i<end; ++i) {
+			char c = text[i];
+			if(c != '{' && c != '}')
+				text[out++] = c;
+		}
+		return out;
+	}
+
+	private boolean startsWith(int start, char[] word)
+	{
+		if(start + word.length > length)
+			return false;
+
+		for(int i=0; i<word.length; ++i) {
+			if(text[start + i] != word[i])
+				return false;
+		}
+		return true;
+	}
+
+	//"\\s" of the regular expressions
+	private static boolean isSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	//"\\w" of the regular expressions
+	private static boolean isWord(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+	}
+
+	private static boolean isCallChar(char c) {
+		return isWord(c) || isSpace(c) || c == '.';
+	}
+}
@@ -0,0 +1,169 @@
+package parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.javaparser.ast.comments.BlockComment;
+import com.github.javaparser.ast.comments.Comment;
+import com.github.javaparser.ast.comments.JavadocComment;
+import com.github.javaparser.ast.comments.LineComment;
+
+// Finds the comments of a java file without building the syntax tree. Only string, character
+// and text block literals are recognised so that comment markers inside them are skipped.
+// Comment content is the same as Comment.getContent() of the java parser.
+public class CommentLexer
+{
+	private final List<Comment> comments = new ArrayList<Comment>();  // comments in source order
+	private int fileCommentIndex = -1;
+
+	private char[] text;
+	private int length;
+
+	public List<Comment> getComments() {
+		return comments;
+	}
+
+	// Index of the comment the java parser attributes to the compilation unit, -1 if none. It is the
+	// first comment if it comes before the package declaration, and is not a contained comment.
+	public int getFileCommentIndex() {
+		return fileCommentIndex;
+	}
+
+	// source of a java file, decoded as UTF-8 like the java parser does
+	public static String readSource(File file) throws IOException
+	{
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+			ByteBuffer bytes = ByteBuffer.allocate((int)channel.size());
+			while(bytes.hasRemaining() && channel.read(bytes) >= 0);
+			bytes.flip();
+
+			return decoder.decode(bytes).toString();
+		}
+	}
+
+	public void lex(String source)
+	{
+		text = source.toCharArray();
+		length = text.length;
+
+		lex();
+	}
+
+	private void lex()
+	{
+		comments.clear();
+		fileCommentIndex = -1;
+
+		int firstCodeIndex = -1;     // start of the first token that is not a comment
+		int firstCommentIndex = -1;  // start of the first comment
+		boolean packageFirst = false;
+
+		int i = 0;
+		while(i < length) {
+			char c = text[i];
+
+			if(c == '/' && i + 1 < length && (text[i + 1] == '/' || text[i + 1] == '*') && firstCommentIndex < 0)
+				firstCommentIndex = i;
+			
+			if(c == '/' && i + 1 < length && text[i + 1] == '/') {
+				int end = i + 2;
+				while(end < length && text[end] != '\n' && text[end] != '\r')
+					++end;
+
+				comments.add(new LineComment(new String(text, i + 2, end - i - 2)));
+				i = end;
+			}
+			else if(c == '/' && i + 1 < length && text[i + 1] == '*') {
+				int end = indexOfCommentEnd(i + 2);
+
+				//"/**/" is an empty block comment
+				if(i + 2 < length && text[i + 2] == '*' && end > i + 2)
+					comments.add(new JavadocComment(new String(text, i + 3, end - i - 3)));
+				else
+					comments.add(new BlockComment(new String(text, i + 2, end - i - 2)));
+
+				i = Math.min(end + 2, length);
+			}
+			else if(c == '"' || c == '\'') {
+				if(firstCodeIndex < 0)
+					firstCodeIndex = i;
+				i = skipLiteral(i);
+			}
+			else {
+				if(firstCodeIndex < 0 && !Character.isWhitespace(c)) {
+					firstCodeIndex = i;
+					packageFirst = startsWithWord(i, "package");
+				}
+				++i;
+			}
+		}
+
+		if(packageFirst && firstCommentIndex >= 0 && firstCommentIndex < firstCodeIndex)
+			fileCommentIndex = 0;
+	}
+
+	// index of the closing "*/" of a block comment, or the end of the text if it is not closed
+	private int indexOfCommentEnd(int from)
+	{
+		for(int i = from; i + 1 < length; ++i) {
+			if(text[i] == '*' && text[i + 1] == '/')
+				return i;
+		}
+		return length;
+	}
+
+	// index after a string, character or text block literal
+	private int skipLiteral(int start)
+	{
+		char quote = text[start];
+
+		if(quote == '"' && start + 2 < length && text[start + 1] == '"' && text[start + 2] == '"') {
+			int i = start + 3;
+			while(i < length) {
+				if(text[i] == '\\')
+					i += 2;
+				else if(text[i] == '"' && i + 2 < length && text[i + 1] == '"' && text[i + 2] == '"')
+					return i + 3;
+				else
+					++i;
+			}
+			return length;
+		}
+
+		int i = start + 1;
+		while(i < length) {
+			char c = text[i];
+			if(c == '\\')
+				i += 2;
+			else if(c == quote)
+				return i + 1;
+			else if(c == '\n' || c == '\r')  //unterminated literal
+				return i;
+			else
+				++i;
+		}
+		return length;
+	}
+
+	private boolean startsWithWord(int start, String word)
+	{
+		int end = start + word.length();
+		if(end > length || !new String(text, start, word.length()).equals(word))
+			return false;
+
+		return end == length || !Character.isJavaIdentifierPart(text[end]);
+	}
+}
@@ -0,0 +1,202 @@
+package parser;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+// Records path, size, modified time and content hash of every java file in a project.
+// Comparing two manifests tells which files were added, changed or deleted since the last run.
+public class FileManifest
+{
+	public static class Entry
+	{
+		private final long size;
+		private final long modified;
+		private final String hash;
+
+		public Entry(long size, long modified, String hash)
+		{
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+		}
+	}
+
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();  // relative path : entry, in walk order
+	private final Map<String, File> files = new LinkedHashMap<String, File>();      // relative path : file, only for scanned manifests
+
+	public Map<String, Entry> getEntries() {
+		return entries;
+	}
+
+	// relative path of the file in the project directory, always '/' separated
+	public static String relativePath(File projDir, File file)
+	{
+		return projDir.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/');
+	}
+
+	private static final String INDEX_FORMAT = "1";  // change when the document tokens or index layout change
+	
+	// manifest location of a project indexed in memory
+	public static File manifestFile(File projDir)
+	{
+		return new File("temp" + File.separator + "manifest", key(projDir.getAbsolutePath()) + ".txt");
+	}
+	
+	// on-disk index directory of a project, keyed by its path and the search options that change the documents
+	public static File workspaceDir(File projDir, String optionsKey)
+	{
+		return new File("temp" + File.separator + "index", key(projDir.getAbsolutePath() + "\n" + optionsKey + "\n" + INDEX_FORMAT));
+	}
+	
+	static String key(String text)
+	{
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			return toHex(digest.digest(text.getBytes("UTF-8")));
+		}
+		catch(NoSuchAlgorithmException | IOException e) {
+			return Integer.toHexString(text.hashCode());
+		}
+	}
+
+	// Scan the project directory. Content of a file is only hashed again if its size or
+	// modified time differs from the previous manifest.
+	public static FileManifest scan(File projDir, FileManifest previous) throws IOException
+	{
+		FileManifest manifest = new FileManifest();
+		manifest.scanDirectory(projDir, projDir, previous);
+		return manifest;
+	}
+
+	private void scanDirectory(File projDir, File dir, FileManifest previous) throws IOException
+	{
+		for(final File file : dir.listFiles()) {
+
+			if(file.isDirectory())
+				scanDirectory(projDir, file, previous);
+
+			if(file.getName().endsWith(".java")) {
+
+				String path = relativePath(projDir, file);
+				long size = file.length();
+				long modified = file.lastModified();
+
+				Entry old = (previous != null) ? previous.entries.get(path) : null;
+				String hash = (old != null && old.size == size && old.modified == modified) ? old.hash : contentHash(file);
+
+				entries.put(path, new Entry(size, modified, hash));
+				files.put(path, file);
+			}
+		}
+	}
+
+	// files of this manifest that are new or whose content differs from the previous manifest
+	public List<String> addedOrChanged(FileManifest previous)
+	{
+		List<String> paths = new ArrayList<String>();
+
+		for(Map.Entry<String, Entry> entry : entries.entrySet()) {
+			Entry old = previous.entries.get(entry.getKey());
+			if(old == null || !old.hash.equals(entry.getValue().hash))
+				paths.add(entry.getKey());
+		}
+
+		return paths;
+	}
+
+	// files of the previous manifest that no longer exist
+	public List<String> deleted(FileManifest previous)
+	{
+		List<String> paths = new ArrayList<String>();
+
+		for(String path : previous.entries.keySet()) {
+			if(!entries.containsKey(path))
+				paths.add(path);
+		}
+
+		return paths;
+	}
+
+	public File getFile(String path) {
+		return files.get(path);
+	}
+
+	public static FileManifest load(File manifestFile)
+	{
+		if(!manifestFile.isFile())
+			return null;
+
+		FileManifest manifest = new FileManifest();
+
+		try(Scanner scanner = new Scanner(manifestFile, "UTF-8")) {
+			while (scanner.hasNextLine()) {
+				String[] fields = scanner.nextLine().split("\t");
+				if(fields.length != 4)
+					continue;
+
+				manifest.entries.put(fields[0], new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]));
+			}
+		}
+		catch(IOException | NumberFormatException e) {
+			e.printStackTrace();
+			return null;
+		}
+
+		return manifest;
+	}
+
+	// written under a temporary name and renamed, runs of several search options may save the manifest of a project at once
+	public void save(File manifestFile)
+	{
+		File dir = manifestFile.getParentFile();
+		if(dir != null && !dir.exists())
+			dir.mkdirs();
+
+		File tempFile = new File(manifestFile.getPath() + "." + System.nanoTime() + ".tmp");
+		try {
+			try(BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile))) {
+				for(Map.Entry<String, Entry> entry : entries.entrySet()) {
+					Entry e = entry.getValue();
+					writer.write(entry.getKey() + "\t" + e.size + "\t" + e.modified + "\t" + e.hash);
+					writer.newLine();
+				}
+			}
+			Files.move(tempFile.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(IOException e) {
+			e.printStackTrace();
+			tempFile.delete();
+		}
+	}
+
+	static String contentHash(File file) throws IOException
+	{
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			return toHex(digest.digest(Files.readAllBytes(file.toPath())));
+		}
+		catch(NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+	}
+
+	static String toHex(byte[] bytes)
+	{
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for(byte b : bytes) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+}
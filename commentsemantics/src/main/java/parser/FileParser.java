@@ -3,17 +3,24 @@ package parser;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
-import java.util.regex.Pattern;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.util.CharArraySet;
 import org.apache.lucene.analysis.custom.CustomAnalyzer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
 import com.github.javaparser.ast.body.ConstructorDeclaration;
@@ -27,7 +34,13 @@ import com.github.javaparser.ast.type.ClassOrInterfaceType;
 import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
 
 import featurelocation.FeatureLocation;
+import featurelocation.TermDictionary;
+import featurelocation.TermDocument;
+import parser.FileTokens.CommentKind;
+import parser.FileTokens.CommentTokens;
 
+// A parser is used by one thread at a time, parallel parsing takes a worker per thread from newWorker.
+// Workers share the stop words of their owner, never changed once read, and its thread safe term dictionary.
 public class FileParser {
 	
 	private CodeCommentParser codeCommentParser = null;	
@@ -35,14 +48,14 @@ public class FileParser {
 	private final String JAVAKEYWORDS = "./data/javakeywords.txt";
 	private final String ENGLISHSTOPWORDS = "./data/stopwords.txt";
 	
-	private List<String> artefact = new ArrayList<String>(); // artifact tokens
-	private List<String> comments = new ArrayList<String>(); // comment tokens
-	
-	private FeatureLocation vsmFL;
+	private FeatureLocation corpusIndex;  // index of the VSM query search and the document similarity
 	private FeatureLocation lsiFL;
-	private FeatureLocation docSimilarity;
+	private TermDictionary termDictionary = new TermDictionary();  // documents are handed to the FL techniques as term ids
+	
+	private CharArraySet StopWords = new CharArraySet(64, false);
 	
-	private List<String> StopWords = new ArrayList<String>();
+	private final Analyzer analyzer = buildAnalyzer();  // lower case, stop words and stemming, reused by every name of this parser
+	private final StringBuilder nameBuffer = new StringBuilder();
 	
 	public FileParser(CodeCommentParser codeCommentParser)
 	{
@@ -50,6 +63,28 @@ public class FileParser {
 		populateStopWords();		
 	}
 	
+	// worker parser for parallel parsing, has its own token buffers and code comment parser
+	// but shares the stop words and the search options of the owner
+	private FileParser(FileParser owner)
+	{
+		this.codeCommentParser = owner.codeCommentParser.newWorker();
+		this.StopWords = owner.StopWords;
+		this.termDictionary = owner.termDictionary;
+		
+		this.UseAllComments = owner.UseAllComments;
+		this.UseLineComments = owner.UseLineComments;
+		this.UseBlockComment = owner.UseBlockComment;
+		this.UseJavadocComment = owner.UseJavadocComment;
+		this.RemoveCodeComments = owner.RemoveCodeComments;
+		this.IncludeArtefacts = owner.IncludeArtefacts;
+		this.IndexSources = owner.IndexSources;
+	}
+	
+	public FileParser newWorker()
+	{
+		return new FileParser(this);
+	}
+	
 	private void populateStopWords()
 	{		
 		//adding java keywords
@@ -78,8 +113,8 @@ public class FileParser {
 	}
 	
 	
-	public void setVsmFL(FeatureLocation vsmFL) {
-		this.vsmFL = vsmFL;
+	public void setCorpusIndex(FeatureLocation corpusIndex) {
+		this.corpusIndex = corpusIndex;
 	}
 	
 	public void setLsiFL(FeatureLocation lsiFL)
@@ -87,9 +122,9 @@ public class FileParser {
 		this.lsiFL = lsiFL;
 	}
 	
-	public void setDocumentSimilarity(FeatureLocation docSimilarity)
+	public void setTermDictionary(TermDictionary termDictionary)
 	{
-		this.docSimilarity = docSimilarity;
+		this.termDictionary = termDictionary;
 	}
 
 	private boolean UseAllComments = false;     // use all comments for feature location
@@ -98,6 +133,14 @@ public class FileParser {
 	private boolean UseJavadocComment = false;   // use only java doc comments for feature location
 	private boolean RemoveCodeComments = false;  // do not consider commented code for feature location
 	private boolean IncludeArtefacts = false;    // use artefact with comments for feature location
+	private boolean IndexSources = false;        // index every comment source in a field of its own, the search options choose the fields at query time
+	
+	// index fields of the comment sources
+	private static final String ARTEFACT_FIELD = "artefacts";
+	private static final String ALL_ONLY = "_allonly";    // comments only in the all comments document
+	private static final String KIND_ONLY = "_kindonly";  // comments only in the document of their comment kind option
+	private static final String CODE = "_code";           // tokens only in the comments with commented code
+	private static final String CLEAN = "_clean";         // tokens only in the comments without commented code
 	
 	
 	public void setUseAllComments(boolean useAllComments) {
@@ -124,104 +167,370 @@ public class FileParser {
 		this.RemoveCodeComments = removeCodeComments;		
 	}
 	
+	public void setIndexSources(boolean indexSources) {
+		IndexSources = indexSources;
+	}
+	
 		
 	public void reset()
 	{
-		artefact.clear();
-		comments.clear();	
-		vsmFL.reset();
+		corpusIndex.reset();
 		lsiFL.reset();
-		docSimilarity.reset();
+		termDictionary.clear();
 	}
 	
 
 	public void parseNode(String fileName, Node node, String parent) 
 	{
-		// find artifact tokens if enabled
-		if(IncludeArtefacts) {
-			node.accept(new ArtefactVisitor(artefact), null);
+		prepareDocument(fileName, extractTokens(node));
+	}
+	
+	// The comment kind search options only use the comments the java parser does not attribute to a node,
+	// and artefacts are names of the syntax tree. The other search options only need the comment lexer.
+	public boolean needsSyntaxTree()
+	{
+		return UseLineComments || UseBlockComment || UseJavadocComment || IncludeArtefacts || IndexSources;
+	}
+	
+	// true if the document of the current search options can be assembled from the tokens
+	public boolean canAssemble(FileTokens fileTokens)
+	{
+		return fileTokens.hasSyntaxTree() || !needsSyntaxTree();
+	}
+	
+	public void prepareDocument(String fileName, FileTokens fileTokens)
+	{
+		prepareDocument(fileName, encodeDocument(fileTokens));
+	}
+	
+	// assemble the document without touching the FL techniques, used by the parallel workers
+	public ParsedFile parseFile(String fileName, FileTokens fileTokens)
+	{
+		TermDocument document = encodeDocument(fileTokens);
+		return new ParsedFile(fileName, document, codeCommentParser.takeExcludedComments());
+	}
+	
+	// commented code removed by a worker, written in the file order
+	public void writeExcludedComments(ParsedFile parsedFile)
+	{
+		codeCommentParser.writeExcludedComments(parsedFile.getExcludedComments());
+	}
+	
+	// FL techniques the documents are prepared for
+	public List<FeatureLocation> getFeatureLocations()
+	{
+		return Arrays.asList(corpusIndex, lsiFL);
+	}
+	
+	// directory of the FL techniques for the current project and search options, null keeps them in memory.
+	// Returns true if all of them hold the documents of an earlier run.
+	public boolean openWorkspace(File workspaceDir)
+	{
+		boolean opened = corpusIndex.openWorkspace(workspaceDir);
+		opened &= lsiFL.openWorkspace(workspaceDir);
+		return opened;
+	}
+	
+	public void commit()
+	{
+		corpusIndex.commit();
+		lsiFL.commit();
+	}
+	
+	// search options that change the document tokens
+	public String getOptionsKey()
+	{
+		String comments = UseAllComments ? "all" : UseLineComments ? "line" : UseBlockComment ? "block" : UseJavadocComment ? "javadoc" : "none";
+		return "comments=" + comments + ";removeCodeComments=" + RemoveCodeComments + ";includeArtefacts=" + IncludeArtefacts + (IndexSources ? ";sources=true" : "");
+	}
+	
+	// Index fields of the comment sources that make up the document of the current search options, with
+	// their boosts. The fields of a file hold the same terms as its document of these search options.
+	public Map<String, Float> getSourceFields()
+	{
+		Map<String, Float> fields = new LinkedHashMap<String, Float>();
+		
+		for(CommentKind kind : CommentKind.values()) {
+			if(UseAllComments) {
+				addSourceFields(fields, sourceField(kind, "", ""));
+				addSourceFields(fields, sourceField(kind, ALL_ONLY, ""));
+			}
+			else if(kind == selectedKind()) {
+				addSourceFields(fields, sourceField(kind, "", ""));
+				addSourceFields(fields, sourceField(kind, KIND_ONLY, ""));
+			}
 		}
 		
+		if(IncludeArtefacts)
+			fields.put(ARTEFACT_FIELD, 1f);
 		
-		// find comment tokens
-		if(UseAllComments) {   //full comment search mode
-			
-			for (Comment comment : node.getAllContainedComments()) 
-			{
-				String refinedComment = comment.getContent();
-				
-				//remove commented code
-				if(RemoveCodeComments) {				
-					refinedComment = codeCommentParser.parseCodeComments(refinedComment);
-					if(refinedComment.isEmpty())
-						continue;
-				}
-				
-				comments.addAll(tokenizeName(refinedComment, true));
-			}			
+		return fields;
+	}
+	
+	private void addSourceFields(Map<String, Float> fields, String field)
+	{
+		fields.put(field, 1f);
+		fields.put(field + (RemoveCodeComments ? CLEAN : CODE), 1f);
+	}
+	
+	// comment kind of the comment kind search options, null for the others
+	private CommentKind selectedKind()
+	{
+		return UseLineComments ? CommentKind.LINE : UseBlockComment ? CommentKind.BLOCK : UseJavadocComment ? CommentKind.JAVADOC : null;
+	}
+	
+	// Index field of the comments of a kind. Most comments are in the all comments document and in the document
+	// of their comment kind option, the java parser finds some of them for only one of the two.
+	private static String sourceField(CommentKind kind, String documents, String tokens)
+	{
+		return kind.name().toLowerCase() + documents + tokens;
+	}
+	
+	public void removeDocument(String fileName)
+	{
+		corpusIndex.removeDocument(fileName);
+		lsiFL.removeDocument(fileName);
+	}
+	
+	// document of the current search options, with the documents of every comment source if they are indexed
+	private TermDocument encodeDocument(FileTokens fileTokens)
+	{
+		TermDocument document = termDictionary.encode(assembleTokens(fileTokens));
+		if(!IndexSources)
+			return document;
+		
+		Map<String, TermDocument> sources = new LinkedHashMap<String, TermDocument>();
+		for(Map.Entry<String, List<String>> source : assembleSources(fileTokens).entrySet()) {
+			sources.put(source.getKey(), termDictionary.encode(source.getValue()));
 		}
+		return document.withSources(sources);
+	}
+	
+	private void prepareDocument(String fileName, TermDocument document)
+	{
+		// prepare document for each FL techniques
+		corpusIndex.prepareDocument(fileName, document);
+		lsiFL.prepareDocument(fileName, document);			
+	}
+	
+	// tokens of all comment kinds and artefacts, the document of a search option is assembled from them
+	public FileTokens extractTokens(Node node)
+	{
+		// find artifact tokens
+		List<String> artefact = new ArrayList<String>();
+		node.accept(new ArtefactVisitor(artefact), null);
 		
+		// find comment tokens, all comments search mode uses the order of contained comments
+		List<CommentTokens> comments = new ArrayList<CommentTokens>();
+		Map<Comment, Integer> commentIndex = new IdentityHashMap<Comment, Integer>();
 		
-		if(UseLineComments) {  //only line comments search mode			
+		for (Comment comment : node.getAllContainedComments()) 
+		{
+			commentIndex.put(comment, comments.size());
+			comments.add(tokenizeComment(comment));
+		}
+		int allCount = comments.size();
+		
+		// comment kind search modes use the tree order
+		int[] lineOrder = commentOrder(node.findAll(LineComment.class), comments, commentIndex);
+		int[] blockOrder = commentOrder(node.findAll(BlockComment.class), comments, commentIndex);
+		int[] javadocOrder = commentOrder(node.findAll(JavadocComment.class), comments, commentIndex);
+		
+		return new FileTokens(comments, allCount, lineOrder, blockOrder, javadocOrder, artefact);
+	}
+	
+	// Tokens of a java source, found by the comment lexer if the search options do not need the syntax tree,
+	// which is several times faster than parsing. Returns null if the source can not be parsed.
+	public FileTokens extractTokens(String source, JavaParser javaParser, CommentLexer commentLexer)
+	{
+		if(needsSyntaxTree()) {
+			ParseResult<CompilationUnit> result = javaParser.parse(source);
+			if(!result.isSuccessful() || !result.getResult().isPresent())
+				return null;
 			
-			for (LineComment comment : node.findAll(LineComment.class))
-			{
-				String refinedComment = comment.getContent();
-				
-				if(RemoveCodeComments) {  //remove commented code				
-					refinedComment = codeCommentParser.parseCodeComments(refinedComment);
-					if(refinedComment.isEmpty())
-						continue;
-				}
-				
-				comments.addAll(tokenizeName(refinedComment, true));
+			return extractTokens(result.getResult().get());
+		}
+		
+		commentLexer.lex(source);
+		return extractTokens(commentLexer);
+	}
+	
+	// tokens of the comments found by the comment lexer, usable by the all comments search option.
+	// Comments are in source order instead of the tree order, which gives the same document terms.
+	public FileTokens extractTokens(CommentLexer lexer)
+	{
+		List<CommentTokens> comments = new ArrayList<CommentTokens>();
+		
+		List<Comment> found = lexer.getComments();
+		for(int i=0; i<found.size(); ++i) {
+			if(i != lexer.getFileCommentIndex())  //compilation unit comment is not a contained comment
+				comments.add(tokenizeComment(found.get(i)));
+		}
+		
+		return new FileTokens(comments, comments.size(), null, null, null, null);
+	}
+	
+	private CommentTokens tokenizeComment(Comment comment)
+	{
+		String content = comment.getContent();
+		List<String> tokens = tokenizeName(content, true);
+		
+		CommentKind kind = comment.isLineComment() ? CommentKind.LINE : comment.isJavadocComment() ? CommentKind.JAVADOC : CommentKind.BLOCK;
+		
+		//remove commented code
+		String refinedComment = codeCommentParser.removeCodeComments(content);
+		if(refinedComment == null)
+			return new CommentTokens(kind, tokens, null, content);
+		
+		List<String> cleanTokens = refinedComment.equals(content) ? tokens : tokenizeName(refinedComment, true);
+		return new CommentTokens(kind, tokens, cleanTokens, null);
+	}
+	
+	private int[] commentOrder(List<? extends Comment> found, List<CommentTokens> comments, Map<Comment, Integer> commentIndex)
+	{
+		int[] order = new int[found.size()];
+		
+		for(int i=0; i<order.length; ++i) {
+			Integer index = commentIndex.get(found.get(i));
+			if(index == null) {  //not a contained comment, only used by its comment kind
+				index = comments.size();
+				commentIndex.put(found.get(i), index);
+				comments.add(tokenizeComment(found.get(i)));
 			}
+			order[i] = index;
 		}
 		
-		if(UseBlockComment) {  //only block comments search mode			
-					
-			for (BlockComment comment : node.findAll(BlockComment.class))
-			{
-				String refinedComment = comment.getContent();
-				
-				if(RemoveCodeComments) {  //remove commented code				
-					refinedComment = codeCommentParser.parseCodeComments(refinedComment);
-					if(refinedComment.isEmpty())
-						continue;
-				}
-				
-				comments.addAll(tokenizeName(refinedComment, true));
+		return order;
+	}
+	
+	// document tokens of the current search options
+	private List<String> assembleTokens(FileTokens fileTokens)
+	{
+		List<String> tokens = new ArrayList<String>();
+		
+		if(UseAllComments) {   //full comment search mode
+			for(int i=0; i<fileTokens.allCount; ++i) {
+				addComment(tokens, fileTokens.comments.get(i));
 			}
 		}
 		
-		if(UseJavadocComment) {  //only java doc comments search mode			
-			
-			for (JavadocComment comment : node.findAll(JavadocComment.class))
-			{
-				String refinedComment = comment.getContent();
-				
-				if(RemoveCodeComments) {  //remove commented code				
-					refinedComment = codeCommentParser.parseCodeComments(refinedComment);
-					if(refinedComment.isEmpty())
-						continue;
-				}
-				
-				comments.addAll(tokenizeName(refinedComment, true));
+		if(UseLineComments) {  //only line comments search mode
+			for(int index : fileTokens.lineOrder) {
+				addComment(tokens, fileTokens.comments.get(index));
 			}
 		}
-				
+		
+		if(UseBlockComment) {  //only block comments search mode
+			for(int index : fileTokens.blockOrder) {
+				addComment(tokens, fileTokens.comments.get(index));
+			}
+		}
+		
+		if(UseJavadocComment) {  //only java doc comments search mode
+			for(int index : fileTokens.javadocOrder) {
+				addComment(tokens, fileTokens.comments.get(index));
+			}
+		}
+		
 		//if artefact also needs to be considered add it to the final data 
 		if(IncludeArtefacts) {
-			comments.addAll(artefact);
+			tokens.addAll(fileTokens.artefacts);
 		}
 		
-		// prepare document for each FL techniques
-		vsmFL.prepareDocument(fileName, comments);
-		lsiFL.prepareDocument(fileName, comments);			
-		docSimilarity.prepareDocument(fileName, comments);
+		return tokens;
+	}
+	
+	// tokens of every comment source that has any, by index field
+	private Map<String, List<String>> assembleSources(FileTokens fileTokens)
+	{
+		Map<String, List<String>> sources = new LinkedHashMap<String, List<String>>();
+		boolean[] ordered = new boolean[fileTokens.comments.size()];  // in the order of a comment kind option
+		
+		CommentKind[] kinds = {CommentKind.LINE, CommentKind.BLOCK, CommentKind.JAVADOC};
+		int[][] orders = {fileTokens.lineOrder, fileTokens.blockOrder, fileTokens.javadocOrder};
 		
-		artefact.clear();
-		comments.clear();
+		for(int k=0; k<kinds.length; ++k) {
+			for(int index : orders[k]) {
+				ordered[index] = true;
+				addSource(sources, fileTokens.comments.get(index), sourceField(kinds[k], (index < fileTokens.allCount) ? "" : KIND_ONLY, ""));
+			}
+		}
+		
+		for(int i=0; i<fileTokens.allCount; ++i) {
+			CommentTokens comment = fileTokens.comments.get(i);
+			if(!ordered[i])
+				addSource(sources, comment, sourceField(comment.kind, ALL_ONLY, ""));
+		}
+		
+		if(!fileTokens.artefacts.isEmpty())
+			sources.put(ARTEFACT_FIELD, fileTokens.artefacts);
+		
+		return sources;
+	}
+	
+	// Splits the comment into the tokens it has with and without commented code, the tokens only the original
+	// comment has and the tokens only the comment without commented code has, a comment that is mostly code
+	// only has tokens with commented code.
+	private static void addSource(Map<String, List<String>> sources, CommentTokens comment, String field)
+	{
+		List<String> common = new ArrayList<String>();
+		List<String> code = new ArrayList<String>();
+		List<String> clean = new ArrayList<String>();
+		
+		if(comment.isCode()) {
+			code.addAll(comment.tokens);
+		}
+		else if(comment.cleanTokens == comment.tokens) {
+			common.addAll(comment.tokens);
+		}
+		else {
+			Map<String, Integer> cleanCounts = new HashMap<String, Integer>();  // token : count left in the clean tokens
+			for(String token : comment.cleanTokens) {
+				cleanCounts.merge(token, 1, Integer::sum);
+			}
+			
+			for(String token : comment.tokens) {
+				Integer count = cleanCounts.get(token);
+				if(count != null && count > 0) {
+					cleanCounts.put(token, count - 1);
+					common.add(token);
+				}
+				else {
+					code.add(token);
+				}
+			}
+			
+			for(String token : comment.cleanTokens) {
+				Integer count = cleanCounts.get(token);
+				if(count > 0) {
+					cleanCounts.put(token, count - 1);
+					clean.add(token);
+				}
+			}
+		}
+		
+		addSourceTokens(sources, field, common);
+		addSourceTokens(sources, field + CODE, code);
+		addSourceTokens(sources, field + CLEAN, clean);
+	}
+	
+	private static void addSourceTokens(Map<String, List<String>> sources, String field, List<String> tokens)
+	{
+		if(!tokens.isEmpty())
+			sources.computeIfAbsent(field, key -> new ArrayList<String>()).addAll(tokens);
+	}
+	
+	private void addComment(List<String> tokens, CommentTokens comment)
+	{
+		if(!RemoveCodeComments) {
+			tokens.addAll(comment.tokens);
+		}
+		else if(comment.isCode()) {
+			codeCommentParser.excludeComment(comment.content);  //remove commented code
+		}
+		else {
+			tokens.addAll(comment.cleanTokens);
+		}
 	}
 	
 	//feature location visitor
@@ -279,137 +588,118 @@ public class FileParser {
 	}
 	
 		
-	private List<String> tokenizeName(String name, boolean removePunct)
+	// Camel case and snake case split, digits removal, lower case, stemming and stop word removal in one pass
+	// over the analyzer of this parser. Splitting the name is done by separating its parts with spaces, which
+	// gives the same tokens as analyzing every part on its own.
+	List<String> tokenizeName(String name, boolean removePunct)
 	{
-		//camel case split
-		List<String> tokenList = camelCaseSplit(name);
-		
-		//snake case split
-		List<String> tempTokens =  new ArrayList<String>();
-		for (String token : tokenList) {
-			tempTokens.addAll(snakeCaseSplit(token));
-		}
-		tokenList.clear();
-		tokenList.addAll(tempTokens);			
+		List<String> tokenList = new ArrayList<String>();
 		
-		//digits removal
-		for (int i=0; i<tokenList.size(); ++i) {
-			tokenList.set(i, removeDigits(tokenList.get(i)));
+		//camel case split, snake case split and digits removal
+		nameBuffer.setLength(0);
+		for (int i=0; i<name.length(); ++i) {
+			char c = name.charAt(i);
+			
+			if(c >= 'A' && c <= 'Z' && i > 0) {
+				nameBuffer.append(' ').append(c);
+			}
+			else if(c == '_') {
+				nameBuffer.append(' ');
+			}
+			else if(c < '0' || c > '9') {
+				nameBuffer.append(c);
+			}
 		}
 		
 		//lower case and Stemming
-		tempTokens.clear();
-		for (String token : tokenList) {
-			tempTokens.addAll(tokenizer(token));
-		}
-		tokenList.clear();
-		tokenList.addAll(tempTokens);
-		
-		//remove stop words && words with less than 2 character 
-		for (int i=0; i<tokenList.size(); ++i) {
+		try (TokenStream stream = analyzer.tokenStream(null, nameBuffer.toString())) {
 			
-			if(isRservedWord(tokenList.get(i)) || tokenList.get(i).length() < 2) {
-				tokenList.remove(i);
-				--i;
-			}	
-		}
-		
-		//remove punctuation for comments
-		if(removePunct) {		
-			tempTokens.clear();
+			CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+			stream.reset();
 			
-			for (String token : tokenList) {
-				tempTokens.addAll(removePunctuation(token));
+			while (stream.incrementToken()) {
+				
+				//remove stop words && words with less than 2 character
+				if(term.length() < 2 || StopWords.contains(term.buffer(), 0, term.length()))
+					continue;
+				
+				//remove punctuation for comments
+				if(removePunct)
+					removePunctuation(term.buffer(), term.length(), tokenList);
+				else
+					tokenList.add(term.toString());
 			}
-			tokenList.clear();
-			tokenList.addAll(tempTokens);
+			
+			stream.end();
+			
+		} catch (IOException e) {
+			throw new RuntimeException(e);
 		}
 				
 		return tokenList;
 	}
 	
-	
-	private List<String> tokenizer(String string)
+	private Analyzer buildAnalyzer()
 	{
-		List<String> result = new ArrayList<String>();		
-
 		try {
-			
-			Analyzer analyzer = CustomAnalyzer.builder()
+			return CustomAnalyzer.builder()
 					.withTokenizer("standard")
 					.addTokenFilter("lowercase")
 					.addTokenFilter("stop")
 					.addTokenFilter("porterstem")
 					.build();
-
-			TokenStream stream = analyzer.tokenStream(null, new StringReader(string));
-
-			stream.reset();
-
-			while (stream.incrementToken()) {
-				result.add(stream.getAttribute(CharTermAttribute.class).toString());
-			}
-
+			
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
-
-		return result;
 	}
 	
-	private List<String> camelCaseSplit(String string)
-	{		
-		String [] res = string.split("(?=[A-Z])");
-		
-		List<String> splitStrings = new ArrayList<String>();
-		
-		for(int i=0; i<res.length; ++i) {
-			splitStrings.add(res[i]);
+	// Same parts as splitting the token with the pattern "\\p{Punct}+|\\d+|\\s+": every run of punctuation, digits
+	// or white space separates two parts, which can be empty. Trailing empty parts are removed.
+	private void removePunctuation(char[] buffer, int length, List<String> splitStrings)
+	{
+		int start = 0;
+		int added = splitStrings.size();
+		boolean matched = false;
+		
+		int i = 0;
+		while (i < length) {
+			int kind = separatorKind(buffer[i]);
+			if(kind == 0) {
+				++i;
+				continue;
+			}
+			
+			splitStrings.add(new String(buffer, start, i - start));
+			matched = true;
+			
+			while (i < length && separatorKind(buffer[i]) == kind)
+				++i;
+			start = i;
 		}
 		
-		return splitStrings;
-	}
-	
-	private List<String> snakeCaseSplit(String string)
-	{		
-		String [] res = string.split("_");
+		if(!matched) {
+			splitStrings.add(new String(buffer, 0, length));
+			return;
+		}
 		
-		List<String> splitStrings = new ArrayList<String>();
+		splitStrings.add(new String(buffer, start, length - start));
 		
-		for(int i=0; i<res.length; ++i) {
-			splitStrings.add(res[i]);
+		for (int last = splitStrings.size() - 1; last >= added && splitStrings.get(last).isEmpty(); --last) {
+			splitStrings.remove(last);
 		}
-		
-		return splitStrings;
-	}
-	
-	private String removeDigits(String string)
-	{		
-		return string.replaceAll("[0-9]", "");
 	}
 	
-	private boolean isRservedWord(String string)
+	// 1 for punctuation, 2 for digits, 3 for white space, 0 otherwise
+	private static int separatorKind(char c)
 	{
-		for (String reserved : StopWords) {
-			if(string.equals(reserved))
-				return true;
-				
-		}
-		return false;		
-	}
-	
-	private List<String> removePunctuation(String string)
-	{		
-		Pattern pattern = Pattern.compile("\\p{Punct}+|\\d+|\\s+");
-		String [] res = pattern.split(string);		
-		
-		List<String> splitStrings = new ArrayList<String>();
-		
-		for(int i=0; i<res.length; ++i) {
-			splitStrings.add(res[i]);
-		}
-		
-		return splitStrings;
+		if(c >= '0' && c <= '9')
+			return 2;
+		if(c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r')
+			return 3;
+		if((c >= '!' && c <= '/') || (c >= ':' && c <= '@') || (c >= '[' && c <= '`') || (c >= '{' && c <= '~'))
+			return 1;
+		return 0;
 	}
 		
 }
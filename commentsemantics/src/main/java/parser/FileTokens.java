@@ -0,0 +1,170 @@
+package parser;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Tokens of one source file for every search option. Line, block and java doc comments are kept
+// separately with and without commented code, so the document of any search option can be
+// assembled again without parsing the file.
+public class FileTokens
+{
+	public enum CommentKind {LINE, BLOCK, JAVADOC}
+
+	static class CommentTokens
+	{
+		final CommentKind kind;
+		final List<String> tokens;       // tokens of the comment
+		final List<String> cleanTokens;  // tokens after removing commented code, null if the comment is mostly code
+		final String content;            // original comment, only kept if it is mostly code
+
+		CommentTokens(CommentKind kind, List<String> tokens, List<String> cleanTokens, String content)
+		{
+			this.kind = kind;
+			this.tokens = tokens;
+			this.cleanTokens = cleanTokens;
+			this.content = content;
+		}
+
+		boolean isCode() {
+			return cleanTokens == null;
+		}
+	}
+
+	// The first allCount comments are in the order of Node.getAllContainedComments(), used by the all comments
+	// option. The comment kind options use the order of Node.findAll(), kept as indexes into the comments.
+	// Tokens found by the comment lexer only have the comments in source order, the comment kind orders
+	// and the artefacts are null.
+	final List<CommentTokens> comments;
+	final int allCount;
+	final int[] lineOrder;
+	final int[] blockOrder;
+	final int[] javadocOrder;
+
+	final List<String> artefacts;  // class, field, method, parameter, constructor and type name tokens
+
+	FileTokens(List<CommentTokens> comments, int allCount, int[] lineOrder, int[] blockOrder, int[] javadocOrder, List<String> artefacts)
+	{
+		this.comments = comments;
+		this.allCount = allCount;
+		this.lineOrder = lineOrder;
+		this.blockOrder = blockOrder;
+		this.javadocOrder = javadocOrder;
+		this.artefacts = artefacts;
+	}
+	
+	// true if the tokens come from the syntax tree and can be used for every search option
+	boolean hasSyntaxTree() {
+		return artefacts != null;
+	}
+
+	void write(DataOutputStream out) throws IOException
+	{
+		out.writeInt(comments.size());
+		for(CommentTokens comment : comments) {
+			out.writeByte(comment.kind.ordinal());
+			writeTokens(out, comment.tokens);
+
+			out.writeBoolean(comment.isCode());
+			if(comment.isCode()) {
+				writeString(out, comment.content);
+			}
+			else {
+				out.writeBoolean(comment.cleanTokens == comment.tokens);  //cleaning did not change the comment
+				if(comment.cleanTokens != comment.tokens)
+					writeTokens(out, comment.cleanTokens);
+			}
+		}
+
+		out.writeInt(allCount);
+		out.writeBoolean(hasSyntaxTree());
+		if(hasSyntaxTree()) {
+			writeOrder(out, lineOrder);
+			writeOrder(out, blockOrder);
+			writeOrder(out, javadocOrder);
+			writeTokens(out, artefacts);
+		}
+	}
+
+	static FileTokens read(DataInputStream in) throws IOException
+	{
+		int count = in.readInt();
+		List<CommentTokens> comments = new ArrayList<CommentTokens>(count);
+
+		for(int i=0; i<count; ++i) {
+			CommentKind kind = CommentKind.values()[in.readByte()];
+			List<String> tokens = readTokens(in);
+
+			if(in.readBoolean()) {
+				comments.add(new CommentTokens(kind, tokens, null, readString(in)));
+			}
+			else {
+				List<String> cleanTokens = in.readBoolean() ? tokens : readTokens(in);
+				comments.add(new CommentTokens(kind, tokens, cleanTokens, null));
+			}
+		}
+
+		int allCount = in.readInt();
+		if(!in.readBoolean())
+			return new FileTokens(comments, allCount, null, null, null, null);
+		
+		int[] lineOrder = readOrder(in);
+		int[] blockOrder = readOrder(in);
+		int[] javadocOrder = readOrder(in);
+
+		return new FileTokens(comments, allCount, lineOrder, blockOrder, javadocOrder, readTokens(in));
+	}
+
+	private static void writeTokens(DataOutputStream out, List<String> tokens) throws IOException
+	{
+		out.writeInt(tokens.size());
+		for(String token : tokens) {
+			writeString(out, token);
+		}
+	}
+
+	private static List<String> readTokens(DataInputStream in) throws IOException
+	{
+		int count = in.readInt();
+		List<String> tokens = new ArrayList<String>(count);
+		for(int i=0; i<count; ++i) {
+			tokens.add(readString(in));
+		}
+		return tokens;
+	}
+
+	private static void writeOrder(DataOutputStream out, int[] order) throws IOException
+	{
+		out.writeInt(order.length);
+		for(int index : order) {
+			out.writeInt(index);
+		}
+	}
+
+	private static int[] readOrder(DataInputStream in) throws IOException
+	{
+		int[] order = new int[in.readInt()];
+		for(int i=0; i<order.length; ++i) {
+			order[i] = in.readInt();
+		}
+		return order;
+	}
+
+	// writeUTF is limited to 64K, commented code can be longer
+	private static void writeString(DataOutputStream out, String string) throws IOException
+	{
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException
+	{
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,261 @@
+package parser;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.javaparser.JavaParser;
+
+import featurelocation.FeatureLocation;
+
+// Ingests project files in stages: directory walk, read, parse and tokenize, then one stage for each
+// FL technique. Every stage runs on its own threads, so reading, parsing and indexing overlap.
+// At most queueCapacity files are between the walk and the FL techniques, the walk waits while the
+// later stages are behind, so memory stays flat whatever the project size.
+// Documents reach the FL techniques in walk order, the indexes are identical to a serial run.
+public class IngestionPipeline
+{
+	private final FileParser fileParser;
+	private final TokenCache tokenCache;
+
+	private int readerCount = 1;     // threads reading files
+	private int parserCount = 1;     // threads parsing and tokenizing files
+	private int queueCapacity = 64;  // files between the walk and the FL techniques
+
+	private static class Item
+	{
+		private final int index;  // walk order
+		private final File file;  // null marks the end of the walk, index is then the file count
+
+		private String source;
+		private FileTokens fileTokens;
+		private ParsedFile parsedFile;  // null if the file could not be parsed
+
+		private Item(int index, File file)
+		{
+			this.index = index;
+			this.file = file;
+		}
+	}
+
+	private interface FileWalk
+	{
+		void walk() throws InterruptedException;
+	}
+
+	// state of the current run
+	private ExecutorService readers;
+	private ExecutorService parsers;
+	private Semaphore inFlight;
+	private BlockingQueue<Item> parsedItems;
+	private ThreadLocal<JavaParser> javaParsers;
+	private ThreadLocal<FileParser> fileParsers;
+	private ThreadLocal<CommentLexer> commentLexers;
+	private int fileCount;
+
+	public IngestionPipeline(FileParser fileParser, TokenCache tokenCache)
+	{
+		this.fileParser = fileParser;
+		this.tokenCache = tokenCache;
+	}
+
+	public void setReaderCount(int readerCount) {
+		this.readerCount = Math.max(1, readerCount);
+	}
+
+	public void setParserCount(int parserCount) {
+		this.parserCount = Math.max(1, parserCount);
+	}
+
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = Math.max(1, queueCapacity);
+	}
+
+	public void parseProject(File projDir)
+	{
+		run(() -> walk(projDir));
+	}
+
+	public void parseFiles(List<File> files)
+	{
+		run(() -> {
+			for(File file : files) {
+				add(file);
+			}
+		});
+	}
+
+	private void run(FileWalk fileWalk)
+	{
+		ExecutorService walker = Executors.newSingleThreadExecutor();
+		readers = Executors.newFixedThreadPool(readerCount);
+		parsers = Executors.newFixedThreadPool(parserCount);
+
+		// each FL technique prepares its documents on one thread, in order
+		List<FeatureLocation> featureLocations = fileParser.getFeatureLocations();
+		List<ExecutorService> indexers = new ArrayList<ExecutorService>();
+		for(int i=0; i<featureLocations.size(); ++i) {
+			indexers.add(Executors.newSingleThreadExecutor());
+		}
+
+		inFlight = new Semaphore(queueCapacity);
+		parsedItems = new LinkedBlockingQueue<Item>();  //bounded by the files in flight
+		javaParsers = ThreadLocal.withInitial(JavaParser::new);
+		fileParsers = ThreadLocal.withInitial(fileParser::newWorker);
+		commentLexers = ThreadLocal.withInitial(CommentLexer::new);
+		fileCount = 0;
+
+		try {
+			walker.execute(() -> {
+				try {
+					fileWalk.walk();
+				}
+				catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				finally {
+					parsedItems.add(new Item(fileCount, null));
+				}
+			});
+
+			// files are parsed in any order, they are handed to the FL techniques in walk order
+			Map<Integer, Item> waiting = new HashMap<Integer, Item>();
+			int next = 0;
+			int total = -1;
+
+			while(total < 0 || next < total) {
+				Item item = parsedItems.take();
+				if(item.file == null) {
+					total = item.index;
+					continue;
+				}
+
+				waiting.put(item.index, item);
+				while((item = waiting.remove(next)) != null) {
+					index(item, featureLocations, indexers);
+					++next;
+				}
+			}
+
+			for(ExecutorService indexer : indexers) {
+				indexer.shutdown();
+			}
+			for(ExecutorService indexer : indexers) {
+				indexer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			}
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			walker.shutdownNow();
+			readers.shutdownNow();
+			parsers.shutdownNow();
+			for(ExecutorService indexer : indexers) {
+				indexer.shutdownNow();
+			}
+		}
+	}
+
+	private void walk(File dir) throws InterruptedException
+	{
+		for(final File file : dir.listFiles()) {
+
+			if(file.isDirectory())
+				walk(file);
+
+			if(file.getName().endsWith(".java"))
+				add(file);
+		}
+	}
+
+	// waits while the pipeline is full
+	private void add(File file) throws InterruptedException
+	{
+		inFlight.acquire();
+
+		Item item = new Item(fileCount++, file);
+		readers.execute(() -> read(item));
+	}
+
+	private void read(Item item)
+	{
+		try {
+			FileTokens fileTokens = (tokenCache != null) ? tokenCache.get(item.file) : null;
+
+			if(fileTokens != null && fileParser.canAssemble(fileTokens))
+				item.fileTokens = fileTokens;
+			else
+				item.source = CommentLexer.readSource(item.file);
+		}
+		catch(Exception e) {
+			parsedItems.add(item);
+			return;
+		}
+
+		parsers.execute(() -> parse(item));
+	}
+
+	private void parse(Item item)
+	{
+		try {
+			FileParser parser = fileParsers.get();
+
+			if(item.fileTokens == null) {
+				item.fileTokens = parser.extractTokens(item.source, javaParsers.get(), commentLexers.get());
+				item.source = null;
+
+				if(item.fileTokens != null && tokenCache != null)
+					tokenCache.put(item.file, item.fileTokens);
+			}
+
+			if(item.fileTokens != null)
+				item.parsedFile = parser.parseFile(item.file.getName(), item.fileTokens);
+		}
+		catch(Exception e) {
+			item.parsedFile = null;
+		}
+		finally {
+			parsedItems.add(item);
+		}
+	}
+
+	// hands the document to every FL technique, the file leaves the pipeline once all of them prepared it
+	private void index(Item item, List<FeatureLocation> featureLocations, List<ExecutorService> indexers)
+	{
+		System.out.println("Parsing file " + item.file.getName() + ":");
+
+		ParsedFile parsedFile = item.parsedFile;
+		if(parsedFile == null) {
+			System.out.println("Filr parser exception!");
+			inFlight.release();
+			return;
+		}
+
+		fileParser.writeExcludedComments(parsedFile);
+
+		AtomicInteger pending = new AtomicInteger(featureLocations.size());
+		for(int i=0; i<featureLocations.size(); ++i) {
+			FeatureLocation featureLocation = featureLocations.get(i);
+
+			indexers.get(i).execute(() -> {
+				try {
+					featureLocation.prepareDocument(parsedFile.getFileName(), parsedFile.getDocument());
+				}
+				finally {
+					if(pending.decrementAndGet() == 0)
+						inFlight.release();
+				}
+			});
+		}
+	}
+}
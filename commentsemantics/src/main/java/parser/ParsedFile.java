@@ -0,0 +1,31 @@
+package parser;
+
+import java.util.List;
+
+import featurelocation.TermDocument;
+
+public class ParsedFile
+{
+	private final String fileName;
+	private final TermDocument document;          // document for the FL techniques
+	private final List<String> excludedComments;  // commented code removed while parsing
+
+	public ParsedFile(String fileName, TermDocument document, List<String> excludedComments)
+	{
+		this.fileName = fileName;
+		this.document = document;
+		this.excludedComments = excludedComments;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public TermDocument getDocument() {
+		return document;
+	}
+
+	public List<String> getExcludedComments() {
+		return excludedComments;
+	}
+}
@@ -1,39 +1,207 @@
 package parser;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
-import com.github.javaparser.StaticJavaParser;
-import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.JavaParser;
 
 public class ProjectParser 
 {
 	private FileParser fileParser;
 	
+	private int workerCount = 1;  // number of parallel parser workers, 1 parses on the calling thread
+	private int readerCount = 1;  // number of threads reading files for the parallel parser workers
+	private int queueCapacity = 64;  // files between reading and indexing in a parallel run
+	private File manifestFile = null;  // manifest of the indexed files, default location of the project if not set
+	private boolean saveManifest = true;  // manifest of a parsed project for the updates of later runs
+	private TokenCache tokenCache = null;  // tokens of earlier parsed files, files are always parsed if not set
+	
+	private JavaParser javaParser = new JavaParser();
+	private CommentLexer commentLexer = new CommentLexer();
+	
 	public ProjectParser(FileParser fileParser)
 	{
 		this.fileParser = fileParser;
 	}
 	
-	public void parseProject(File projDir) 
+	public void setWorkerCount(int workerCount) {
+		this.workerCount = Math.max(1, workerCount);
+	}
+	
+	public void setReaderCount(int readerCount) {
+		this.readerCount = Math.max(1, readerCount);
+	}
+	
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = Math.max(1, queueCapacity);
+	}
+	
+	public void setManifestFile(File manifestFile) {
+		this.manifestFile = manifestFile;
+	}
+	
+	// without a manifest a run parses faster, every file is hashed for the manifest. The manifest of the project is left as it is.
+	public void setSaveManifest(boolean saveManifest) {
+		this.saveManifest = saveManifest;
+	}
+	
+	public void setTokenCache(TokenCache tokenCache) {
+		this.tokenCache = tokenCache;
+	}
+	
+	private File manifestFile(File projDir) {
+		return (manifestFile != null) ? manifestFile : FileManifest.manifestFile(projDir);
+	}
+	
+	public void parseProject(File projDir)
+	{
+		if(saveManifest)
+			manifestFile(projDir).delete();  //no manifest until the documents of this run are durable
+		
+		if(workerCount > 1) {
+			newPipeline().parseProject(projDir);
+		}
+		else {
+			parseProjectSerial(projDir);
+		}
+		
+		fileParser.commit();  //manifest is saved only after the documents are durable
+		if(saveManifest)
+			saveManifest(projDir);
+	}
+	
+	// Parse only the files added, changed or deleted since the last run of the project, the FL techniques
+	// must still hold the documents of that run. Returns false if there is no manifest to compare with.
+	public boolean updateProject(File projDir)
+	{
+		File manifestFile = manifestFile(projDir);
+		FileManifest previous = FileManifest.load(manifestFile);
+		if(previous == null)
+			return false;
+		
+		FileManifest current;
+		try {
+			current = FileManifest.scan(projDir, previous);
+		}
+		catch(IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		
+		Set<String> changed = new HashSet<String>(current.addedOrChanged(previous));
+		List<String> deleted = current.deleted(previous);
+		
+		// documents are identified by file name in the FL techniques, so every file sharing
+		// the name of a changed or deleted file is removed and parsed again
+		Set<String> removedNames = new HashSet<String>();
+		for(String path : deleted) {
+			removedNames.add(fileName(path));
+		}
+		for(String path : changed) {
+			if(previous.getEntries().containsKey(path))
+				removedNames.add(fileName(path));
+		}
+		
+		List<File> files = new ArrayList<File>();
+		for(String path : current.getEntries().keySet()) {
+			if(changed.contains(path) || removedNames.contains(fileName(path)))
+				files.add(current.getFile(path));
+		}
+		
+		System.out.println("Incremental update: " + changed.size() + " added or changed, " + deleted.size() + " deleted");
+		
+		for(String name : removedNames) {
+			fileParser.removeDocument(name);
+		}
+		
+		if(workerCount > 1) {
+			newPipeline().parseFiles(files);
+		}
+		else {
+			for(File file : files) {
+				parseFile(file);
+			}
+		}
+		
+		fileParser.commit();
+		current.save(manifestFile);
+		return true;
+	}
+	
+	private IngestionPipeline newPipeline()
+	{
+		IngestionPipeline pipeline = new IngestionPipeline(fileParser, tokenCache);
+		pipeline.setReaderCount(readerCount);
+		pipeline.setParserCount(workerCount);
+		pipeline.setQueueCapacity(queueCapacity);
+		return pipeline;
+	}
+	
+	private void saveManifest(File projDir)
+	{
+		File manifestFile = manifestFile(projDir);
+		
+		try {
+			FileManifest.scan(projDir, null).save(manifestFile);
+		}
+		catch(IOException e) {
+			e.printStackTrace();
+			manifestFile.delete();
+		}
+	}
+	
+	private static String fileName(String path)
+	{
+		return path.substring(path.lastIndexOf('/') + 1);
+	}
+	
+	private void parseProjectSerial(File projDir) 
 	{
 		
 		for(final File file : projDir.listFiles()) {
 			
 			if(file.isDirectory())
-				parseProject(file);  //no need to parse directory, enumerate files instead
+				parseProjectSerial(file);  //no need to parse directory, enumerate files instead
+			
+			if(file.getName().endsWith(".java"))
+				parseFile(file);
+		}
+	}
+	
+	private void parseFile(File file)
+	{
+		System.out.println("Parsing file " + file.getName() + ":");
+		
+		try {
+			FileTokens fileTokens = fileTokens(file);
+			if(fileTokens == null) {
+				System.out.println("Filr parser exception!");
+				return;
+			}
 			
-			if(file.getName().endsWith(".java")) {
-				
-				System.out.println("Parsing file " + file.getName() + ":");
-				
-				try {
-					CompilationUnit cu = StaticJavaParser.parse(file);
-					fileParser.parseNode(file.getName(), cu, "cu");
-				}
-				catch(Exception e) {
-					System.out.println("Filr parser exception!");
-				}	
-			}			
+			fileParser.prepareDocument(file.getName(), fileTokens);
 		}
+		catch(Exception e) {
+			System.out.println("Filr parser exception!");
+		}	
+	}
+	
+	// tokens of the file from the cache or from its source, null if the file can not be parsed
+	private FileTokens fileTokens(File file) throws IOException
+	{
+		FileTokens fileTokens = (tokenCache != null) ? tokenCache.get(file) : null;
+		if(fileTokens != null && fileParser.canAssemble(fileTokens))
+			return fileTokens;
+		
+		fileTokens = fileParser.extractTokens(CommentLexer.readSource(file), javaParser, commentLexer);
+		
+		if(fileTokens != null && tokenCache != null)
+			tokenCache.put(file, fileTokens);
+		
+		return fileTokens;
 	}
 }
@@ -0,0 +1,135 @@
+package parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Tokens of the parsed files, so changing the search options does not parse the files again.
+// An entry is used as long as the size and modified time of its file are unchanged.
+// Safe to use from the parallel parser workers.
+public class TokenCache
+{
+	private static final int CACHE_FORMAT = 2;  // change when the tokenizer or the FileTokens layout change
+
+	private static class Entry
+	{
+		private final long size;
+		private final long modified;
+		private final FileTokens tokens;
+
+		private Entry(long size, long modified, FileTokens tokens)
+		{
+			this.size = size;
+			this.modified = modified;
+			this.tokens = tokens;
+		}
+	}
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();  // absolute path : entry
+	private volatile boolean modified = false;
+
+	// cache file of a project inside the workspace
+	public static File cacheFile(File projDir)
+	{
+		return new File("temp" + File.separator + "tokens", FileManifest.key(projDir.getAbsolutePath()) + ".bin");
+	}
+
+	public FileTokens get(File file)
+	{
+		Entry entry = entries.get(file.getAbsolutePath());
+		if(entry == null || entry.size != file.length() || entry.modified != file.lastModified())
+			return null;
+
+		return entry.tokens;
+	}
+
+	public void put(File file, FileTokens tokens)
+	{
+		entries.put(file.getAbsolutePath(), new Entry(file.length(), file.lastModified(), tokens));
+		modified = true;
+	}
+
+	public void clear()
+	{
+		entries.clear();
+		modified = false;
+	}
+
+	public void load(File cacheFile)
+	{
+		clear();
+
+		if(!cacheFile.isFile())
+			return;
+
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+
+			if(in.readInt() != CACHE_FORMAT)
+				return;
+
+			int count = in.readInt();
+			for(int i=0; i<count; ++i) {
+				String path = in.readUTF();
+				long size = in.readLong();
+				long modified = in.readLong();
+				entries.put(path, new Entry(size, modified, FileTokens.read(in)));
+			}
+		}
+		catch(IOException e) {
+			e.printStackTrace();
+			clear();
+		}
+	}
+
+	// Writes the cache if it changed, entries of deleted files are dropped. The file is written under
+	// a temporary name and replaces the old one when complete, runs of other search options on the same
+	// project may save their cache at the same time.
+	public synchronized void save(File cacheFile)
+	{
+		if(!modified)
+			return;
+
+		File dir = cacheFile.getParentFile();
+		if(dir != null && !dir.exists())
+			dir.mkdirs();
+
+		entries.keySet().removeIf(path -> !new File(path).isFile());
+
+		File tempFile = new File(cacheFile.getPath() + "." + System.nanoTime() + ".tmp");
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+
+			out.writeInt(CACHE_FORMAT);
+			out.writeInt(entries.size());
+
+			for(Map.Entry<String, Entry> entry : entries.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeLong(entry.getValue().size);
+				out.writeLong(entry.getValue().modified);
+				entry.getValue().tokens.write(out);
+			}
+		}
+		catch(IOException e) {
+			e.printStackTrace();
+			tempFile.delete();
+			return;
+		}
+
+		try {
+			Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			modified = false;
+		}
+		catch(IOException e) {
+			e.printStackTrace();
+			tempFile.delete();
+		}
+	}
+}
@@ -3,11 +3,15 @@ package queryresult;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 
+// Scores the query and similarity results of one gold set query set. An evaluator adds up the scores of
+// one run and is used from one thread, concurrent runs have an evaluator and a result store each.
 public class GoldSetEvaluator 
 {
 	public static final String Goldset_Src = "Goldset\\Src\\tomcat70\\"; //ecf; eclipse.jdt.core; eclipse.jdt.debug; eclipse.jdt.ui; eclipse.pde.ui; tomcat70
@@ -16,10 +20,13 @@ public class GoldSetEvaluator
 	
 	private static final String Goldset_ProposeFile = "proposed-NL.txt"; //proposed-PE.txt; proposed-ST.txt
 	
+	public static final List<String> Goldset_Projects = Collections.unmodifiableList(Arrays.asList("ecf", "eclipse.jdt.core", "eclipse.jdt.debug", "eclipse.jdt.ui", "eclipse.pde.ui", "tomcat70"));
+	public static final List<String> Goldset_QuerySets = Collections.unmodifiableList(Arrays.asList("NL", "PE", "ST"));
+	
 	public enum FLType {VSM, LSI}
 	
 		
-	private ResultStore resultStore;
+	private final ResultStore resultStore;
 	
 	private Map<Integer, List<String>> goldsetResults = new HashMap<Integer, List<String>>();
 	private Map<Integer, String> goldsetQueries = new HashMap<Integer, String>();
@@ -39,9 +46,33 @@ public class GoldSetEvaluator
 	private Score lsiSimilarityScore = new Score();
 	
 	public GoldSetEvaluator(ResultStore store)
+	{
+		this(store, new File(Goldset_Query + Goldset_ProposeFile), new File(Goldset_Result + Goldset_ProposeFile));
+	}
+	
+	// gold set of one project and query set, see queryFile and resultFile
+	public GoldSetEvaluator(ResultStore store, File queryFile, File resultFile)
 	{
 		this.resultStore = store;
-		populateGoldSet();
+		populateGoldSet(queryFile, resultFile);
+	}
+	
+	// sources of a gold set project in the gold set directory
+	public static File sourceDir(File goldsetDir, String project)
+	{
+		return new File(new File(goldsetDir, "Src"), project);
+	}
+	
+	// queries of a gold set project, query set NL, PE or ST
+	public static File queryFile(File goldsetDir, String project, String querySet)
+	{
+		return new File(new File(new File(goldsetDir, "Query"), project), "proposed-" + querySet + ".txt");
+	}
+	
+	// relevant files of the queries of a gold set project
+	public static File resultFile(File goldsetDir, String project, String querySet)
+	{
+		return new File(new File(new File(goldsetDir, "Result"), project), "proposed-" + querySet + ".txt");
 	}
 	
 	public void Reset()
@@ -182,6 +213,22 @@ public class GoldSetEvaluator
 		}
 	}
 	
+	// mean scores of the queries evaluated so far, for a summary next to other executions. Call before printFinalScore.
+	public String meanScores(FLType flType)
+	{
+		Score score = (flType == FLType.VSM) ? vsmScore : lsiScore;
+		Score similarityScore = (flType == FLType.VSM) ? vsmSimilarityScore : lsiSimilarityScore;
+		
+		return "mAP " + mean(score.finalPrecision, score) + " mR " + mean(score.finalRecall, score) + " mFS " + mean(score.finalFScore, score)
+				+ " mRR " + mean(score.finalReciprocalRank, score) + ", similarity mAP " + mean(similarityScore.finalPrecision, similarityScore)
+				+ " mRR " + mean(similarityScore.finalReciprocalRank, similarityScore);
+	}
+	
+	private static String mean(Float total, Score score)
+	{
+		return String.format("%.02f", (score.totalExecution > 0) ? total / score.totalExecution : 0.0f);
+	}
+	
 	public void printFinalScore(String executionName) 
 	{
 		resultStore.WriteData("Execution Mode:" + executionName);
@@ -253,13 +300,13 @@ public class GoldSetEvaluator
 		resultStore.PrintLineSeperator();				
 	}
 	
-	private void populateGoldSet()
+	private void populateGoldSet(File queryFile, File resultFile)
 	{	
 		Scanner scanner = null;
 		
 		//populate query
 		try {
-			scanner = new Scanner(new File(Goldset_Query + Goldset_ProposeFile));
+			scanner = new Scanner(queryFile);
 			while (scanner.hasNextLine()) 
 			{
 			   String queryLine = scanner.nextLine();
@@ -277,12 +324,14 @@ public class GoldSetEvaluator
 			e.printStackTrace();
 		}
 		finally {
-			scanner.close();
+			if(scanner != null)
+				scanner.close();
 		}
 		
 		//populate results
+		scanner = null;
 		try {
-			scanner = new Scanner(new File(Goldset_Result + Goldset_ProposeFile));
+			scanner = new Scanner(resultFile);
 			List<String> tempResults = new ArrayList<>();
 			Integer queryDigits = 0;
 			
@@ -316,7 +365,8 @@ public class GoldSetEvaluator
 			e.printStackTrace();
 		}
 		finally {
-			scanner.close();
+			if(scanner != null)
+				scanner.close();
 		}
 	}
 
@@ -5,17 +5,30 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.List;
 
+// Result files of a directory, one file open at a time. Writers on several threads are safe,
+// their lines are not mixed; runs that each open their own files need a store each.
 public class ResultStore 
 {
 	private FileWriter Writer; 
+	private final File resultDir;
 	
-	public void OpenStore(String name)
+	public ResultStore()
+	{
+		this(new File("./result/"));
+	}
+	
+	// stores in the given directory, a batch run has its own
+	public ResultStore(File resultDir)
+	{
+		this.resultDir = resultDir;
+	}
+	
+	public synchronized void OpenStore(String name)
 	{
-		File resultDir = new File("./result/");
 		if(!resultDir.exists())
-			resultDir.mkdir();	
+			resultDir.mkdirs();	
 		
-		String fileName = "./result/" + name.replaceAll("\\s", "") + ".txt";
+		File fileName = new File(resultDir, name.replaceAll("\\s", "") + ".txt");
 		
 		try 
 		{
@@ -27,7 +40,7 @@ public class ResultStore
 		}
 	}
 	
-	public void CloseStore()
+	public synchronized void CloseStore()
 	{		
 		try {
 			Writer.close();
@@ -37,7 +50,7 @@ public class ResultStore
 		}
 	}
 	
-	public void WriteData(String data)
+	public synchronized void WriteData(String data)
 	{
 		try 
 		{
@@ -0,0 +1,97 @@
+package commentsemantics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import featurelocation.CorpusIndex;
+import featurelocation.NoFeatureLocation;
+import featurelocation.TermDictionary;
+import featurelocation.VsmDocSimilarity;
+import featurelocation.VsmFeatureLocation;
+import parser.CodeCommentParser;
+import parser.FileParser;
+import parser.ProjectParser;
+import parser.TokenCache;
+import queryresult.GoldSetEvaluator;
+import queryresult.ResultStore;
+
+// Builds the corpus index of a project with every index profile and reports the index size, the index
+// time and the query and similarity latency of each, and whether the profiles give the same results.
+// Usage: IndexProfileBenchmark [project directory, gold set sources if not given] [query file, one query per line, gold set queries if not given]
+public class IndexProfileBenchmark
+{
+	public static void main(String[] args) throws IOException
+	{
+		File projDir = new File(args.length > 0 ? args[0] : GoldSetEvaluator.Goldset_Src);
+
+		List<String> queries;
+		if(args.length > 1)
+			queries = Files.readAllLines(new File(args[1]).toPath(), StandardCharsets.UTF_8);
+		else
+			queries = new ArrayList<String>(new GoldSetEvaluator(new ResultStore()).GetQueries().values());
+
+		TokenCache tokenCache = new TokenCache();  //every profile indexes the same tokens, the project is parsed once
+		List<List<String>> firstResults = null;
+		List<String> report = new ArrayList<String>();
+		boolean sameResults = true;
+
+		for(CorpusIndex.Profile profile : CorpusIndex.Profile.values()) {
+
+			TermDictionary termDictionary = new TermDictionary();
+			CorpusIndex corpusIndex = new CorpusIndex();
+			corpusIndex.setProfile(profile);
+			corpusIndex.reset();
+
+			VsmFeatureLocation vsmFL = new VsmFeatureLocation(corpusIndex);
+			VsmDocSimilarity vsmDocSimilarity = new VsmDocSimilarity(corpusIndex, termDictionary);
+
+			FileParser fileParser = new FileParser(new CodeCommentParser(new ResultStore()));  //code comments are kept, nothing is excluded
+			fileParser.setCorpusIndex(corpusIndex);
+			fileParser.setLsiFL(new NoFeatureLocation());  //LSI is not part of the comparison
+			fileParser.setTermDictionary(termDictionary);
+			fileParser.setUseAllComments(true);
+
+			ProjectParser projParser = new ProjectParser(fileParser);
+			projParser.setWorkerCount(Runtime.getRuntime().availableProcessors());
+			projParser.setTokenCache(tokenCache);
+			projParser.setSaveManifest(false);  //the manifest hashes every file, a benchmark is never updated
+
+			long buildStart = System.nanoTime();
+			projParser.parseProject(projDir);
+			long buildTime = System.nanoTime() - buildStart;
+
+			List<List<String>> results = new ArrayList<List<String>>();
+			long similarityTime = 0;
+			int similarityCount = 0;
+
+			for(String query : queries) {
+				List<String> docs = vsmFL.VsmQuerySearch(query);
+				results.add(docs);
+
+				if(docs.size() > 0) {
+					long start = System.nanoTime();
+					results.add(vsmDocSimilarity.vsmGetSimilarDocuments(docs.get(0)));
+					similarityTime += System.nanoTime() - start;
+					++similarityCount;
+				}
+			}
+
+			if(firstResults == null)
+				firstResults = results;
+			else
+				sameResults &= firstResults.equals(results);
+
+			report.add(profile + ": index size " + corpusIndex.getIndexSize() / 1024 + " KB, index time " + corpusIndex.getIndexTime() / 1000000
+					+ " ms, build time " + buildTime / 1000000 + " ms, query latency " + String.format("%.2f", vsmFL.getAverageQueryLatency())
+					+ " ms, similarity latency " + String.format("%.2f", (similarityCount > 0) ? similarityTime / 1000000.0 / similarityCount : 0.0) + " ms");
+		}
+
+		System.out.println(queries.size() + " queries");
+		System.out.println(String.join(System.lineSeparator(), report));
+		System.out.println("Same results for every profile: " + sameResults);
+	}
+}
@@ -0,0 +1,89 @@
+package commentsemantics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import featurelocation.CorpusIndex;
+import featurelocation.LsiEngine;
+import featurelocation.LsiFeatureLocation;
+import featurelocation.SvdFeatureLocation;
+import featurelocation.TermDictionary;
+import parser.CodeCommentParser;
+import parser.FileParser;
+import parser.ProjectParser;
+import parser.TokenCache;
+import queryresult.GoldSetEvaluator;
+import queryresult.ResultStore;
+
+// Builds the LSI of a project with the semantic vectors and with the truncated SVD, its document vectors on the
+// heap and in a quantized store, and reports the build time, the size of the semantic space, the heap in use after
+// the build and the query latency of each.
+// Usage: LsiEngineBenchmark [project directory, gold set sources if not given] [query file, one query per line, gold set queries if not given]
+public class LsiEngineBenchmark
+{
+	public static void main(String[] args) throws IOException
+	{
+		File projDir = new File(args.length > 0 ? args[0] : GoldSetEvaluator.Goldset_Src);
+
+		List<String> queries;
+		if(args.length > 1)
+			queries = Files.readAllLines(new File(args[1]).toPath(), StandardCharsets.UTF_8);
+		else
+			queries = new ArrayList<String>(new GoldSetEvaluator(new ResultStore()).GetQueries().values());
+
+		Map<String, LsiEngine> engines = new LinkedHashMap<String, LsiEngine>();
+		engines.put("Semantic vectors", new LsiFeatureLocation());
+		engines.put("SVD", new SvdFeatureLocation());
+
+		SvdFeatureLocation quantizedSvd = new SvdFeatureLocation();
+		quantizedSvd.setQuantized(true);
+		engines.put("SVD quantized", quantizedSvd);
+
+		TokenCache tokenCache = new TokenCache();  //every engine indexes the same tokens, the project is parsed once
+		List<String> report = new ArrayList<String>();
+
+		for(Map.Entry<String, LsiEngine> entry : engines.entrySet()) {
+			LsiEngine engine = entry.getValue();
+
+			FileParser fileParser = new FileParser(new CodeCommentParser(new ResultStore()));  //code comments are kept, nothing is excluded
+			fileParser.setCorpusIndex(new CorpusIndex());
+			fileParser.setLsiFL(engine);
+			fileParser.setTermDictionary(new TermDictionary());
+			fileParser.setUseAllComments(true);
+
+			ProjectParser projParser = new ProjectParser(fileParser);
+			projParser.setWorkerCount(Runtime.getRuntime().availableProcessors());
+			projParser.setTokenCache(tokenCache);
+			projParser.setSaveManifest(false);  //the manifest hashes every file, a benchmark is never updated
+			projParser.parseProject(projDir);
+
+			try {
+				engine.buildSemanticVectors();
+
+				System.gc();
+				Runtime runtime = Runtime.getRuntime();
+				long heapUsed = runtime.totalMemory() - runtime.freeMemory();
+
+				for(String query : queries) {
+					engine.LsiQuerySearch(query);
+				}
+
+				report.add(entry.getKey() + ": build time " + (long)engine.getBuildTime() + " ms, model " + engine.getModelSize() / 1024
+						+ " KB, heap used " + heapUsed / (1024 * 1024) + " MB, query latency " + String.format("%.2f", engine.getAverageQueryLatency()) + " ms");
+			}
+			catch(RuntimeException | LinkageError e) {
+				e.printStackTrace();
+				report.add(entry.getKey() + ": failed, " + e);
+			}
+		}
+
+		System.out.println(queries.size() + " queries");
+		System.out.println(String.join(System.lineSeparator(), report));
+	}
+}
@@ -0,0 +1,117 @@
+package featurelocation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+// The semantic vectors engine trains, searches, folds in and reads its space back from the cache, files of
+// several packages with the same name are separate documents like in the corpus index
+public class LsiFeatureLocationTest
+{
+	private final TermDictionary dictionary = new TermDictionary();
+
+	@Test
+	public void trainsAndSearches() throws IOException
+	{
+		LsiFeatureLocation lsi = new LsiFeatureLocation();
+		prepareCorpus(lsi);
+		lsi.buildSemanticVectors();
+
+		assertEquals("Connector.java", lsi.LsiQuerySearch("socket timeout").get(0));
+		assertEquals("Compiler.java", lsi.LsiQuerySearch("jsp compiler").get(0));
+		assertEquals("Constants.java", lsi.LsiQuerySearch("cookie header").get(0));
+		assertEquals("Constants.java", lsi.LsiQuerySearch("session expire").get(0));
+		assertEquals(2, Collections.frequency(lsi.LsiQuerySearch("cookie session"), "Constants.java"));
+	}
+
+	@Test
+	public void foldsIn() throws IOException
+	{
+		LsiFeatureLocation lsi = new LsiFeatureLocation();
+		lsi.setDriftThreshold(1);
+		prepareCorpus(lsi);
+		lsi.buildSemanticVectors();
+
+		prepare(lsi, "Mapper.java", "socket mapper host context");
+		lsi.buildSemanticVectors();  //folded in with the term vectors of the training
+
+		assertEquals(1.0 / 5, lsi.getDrift(), 1e-9);
+		assertTrue(lsi.LsiQuerySearch("socket").contains("Mapper.java"));
+		assertEquals("Constants.java", lsi.LsiQuerySearch("cookie header").get(0));
+
+		lsi.removeDocument("Constants.java");
+		lsi.buildSemanticVectors();
+
+		assertTrue(!lsi.LsiQuerySearch("cookie session").contains("Constants.java"));
+	}
+
+	@Test
+	public void trainsAgainAfterASmallRemoval() throws IOException
+	{
+		LsiFeatureLocation lsi = new LsiFeatureLocation();
+		lsi.setDriftThreshold(0);  //every change trains again
+		prepareCorpus(lsi);
+		for(int i=0; i<40; ++i) {
+			prepare(lsi, "Filler" + i + ".java", "filler text number" + i);
+		}
+		lsi.buildSemanticVectors();
+
+		//one removed document of the 40 of a segment is below the deletions a merge purges by default
+		lsi.removeDocument("Filler7.java");
+		prepare(lsi, "Mapper.java", "socket mapper host context mapper");
+		lsi.buildSemanticVectors();
+
+		assertEquals("Mapper.java", lsi.LsiQuerySearch("mapper host").get(0));
+		assertEquals("Connector.java", lsi.LsiQuerySearch("socket timeout").get(0));
+		assertEquals("Filler8.java", lsi.LsiQuerySearch("number8").get(0));
+		assertTrue(!lsi.LsiQuerySearch("number7").contains("Filler7.java"));
+	}
+
+	@Test
+	public void readsTheSpaceFromTheCache() throws IOException
+	{
+		File cacheDir = Files.createTempDirectory("lsicache").toFile();
+		ArtifactCache cache = new ArtifactCache(cacheDir, 1L << 30);
+
+		LsiFeatureLocation trained = new LsiFeatureLocation();
+		trained.setArtifactCache(cache);
+		prepareCorpus(trained);
+		trained.buildSemanticVectors();
+
+		LsiFeatureLocation cached = new LsiFeatureLocation();
+		cached.setArtifactCache(cache);
+		prepareCorpus(cached);
+		cached.buildSemanticVectors();
+
+		assertEquals(1, cacheDir.list().length);
+		for(String query : new String[] {"socket timeout", "cookie header", "session expire", "cookie session", "jsp compiler"}) {
+			assertEquals(query, trained.LsiQuerySearch(query), cached.LsiQuerySearch(query));
+		}
+		//each file of a name has its own vector after the reload
+		assertEquals("Constants.java", cached.LsiQuerySearch("cookie header").get(0));
+		assertEquals("Constants.java", cached.LsiQuerySearch("session expire").get(0));
+	}
+
+	private void prepareCorpus(LsiFeatureLocation lsi)
+	{
+		prepare(lsi, "Connector.java", "socket timeout connector thread socket");
+		prepare(lsi, "Constants.java", "cookie header parse value cookie");
+		prepare(lsi, "Constants.java", "session manager expire listener session");
+		prepare(lsi, "Compiler.java", "jsp compiler error line jsp");
+		prepare(lsi, "Realm.java", "user password role principal user");
+		lsi.commit();
+	}
+
+	private void prepare(LsiFeatureLocation lsi, String fileName, String text)
+	{
+		lsi.prepareDocument(fileName, dictionary.encode(Arrays.asList(text.split(" "))));
+	}
+}
@@ -0,0 +1,92 @@
+package featurelocation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+// A store without its exact vectors is a quarter of the floats and ranks by the bytes like a store with them
+public class QuantizedVectorStoreTest
+{
+	private static final int DIMENSION = 200;
+
+	@Test
+	public void exactVectorsOnlyIfAsked() throws IOException
+	{
+		float[][] vectors = randomVectors(500);
+		File exactFile = File.createTempFile("exact", ".bin");
+		File quantizedFile = File.createTempFile("quantized", ".bin");
+		exactFile.deleteOnExit();
+		quantizedFile.deleteOnExit();
+
+		QuantizedVectorStore exact = QuantizedVectorStore.write(exactFile, vectors, DIMENSION, true);
+		QuantizedVectorStore quantized = QuantizedVectorStore.write(quantizedFile, vectors, DIMENSION, false);
+
+		assertTrue(exact.hasExactVectors());
+		assertFalse(QuantizedVectorStore.open(quantizedFile).hasExactVectors());
+		assertTrue(exact.getFileSize() > (long)vectors.length * DIMENSION * 4);
+		assertTrue(quantized.getFileSize() < (long)vectors.length * DIMENSION * 4 / 3);
+
+		assertArrayEquals(vectors[3], exact.getVector(3), 0);
+		assertNull(quantized.getVector(7));
+		assertArrayEquals(vectors[3], quantized.getVector(3), 0.01f);
+
+		double[] query = new double[DIMENSION];
+		for(int c=0; c<DIMENSION; ++c) {
+			query[c] = vectors[11][c] + vectors[42][c];
+		}
+		assertEquals(exact.nearest(query, 50, 0), quantized.nearest(query, 50, 0));
+		assertEquals(exact.nearest(query, 50, 0), quantized.nearest(query, 50, 200));  //no exact vectors to re-rank
+	}
+
+	@Test
+	public void dequantizedVectorsQuantizeToTheSameBytes() throws IOException
+	{
+		float[][] vectors = randomVectors(100);
+		File file = File.createTempFile("quantized", ".bin");
+		File againFile = File.createTempFile("again", ".bin");
+		file.deleteOnExit();
+		againFile.deleteOnExit();
+
+		QuantizedVectorStore store = QuantizedVectorStore.write(file, vectors, DIMENSION, false);
+		float[][] dequantized = new float[vectors.length][];
+		for(int doc=0; doc<vectors.length; ++doc) {
+			dequantized[doc] = store.getVector(doc);
+		}
+		QuantizedVectorStore again = QuantizedVectorStore.write(againFile, dequantized, DIMENSION, false);
+
+		for(int doc=0; doc<vectors.length; ++doc) {
+			assertArrayEquals(dequantized[doc], again.getVector(doc), 0);
+		}
+	}
+
+	// unit vectors, the vector 7 has none
+	private static float[][] randomVectors(int count)
+	{
+		Random random = new Random(5);
+		float[][] vectors = new float[count][];
+		for(int doc=0; doc<count; ++doc) {
+			if(doc == 7)
+				continue;
+
+			float[] vector = new float[DIMENSION];
+			double norm = 0;
+			for(int c=0; c<DIMENSION; ++c) {
+				vector[c] = (float)random.nextGaussian();
+				norm += vector[c] * vector[c];
+			}
+			for(int c=0; c<DIMENSION; ++c) {
+				vector[c] /= Math.sqrt(norm);
+			}
+			vectors[doc] = vector;
+		}
+		return vectors;
+	}
+}
@@ -0,0 +1,130 @@
+package featurelocation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+// Searching the comment sources of some search options ranks the documents and finds the similar documents
+// like a data field indexed with these options
+public class SourceTermQueryTest
+{
+	private static final String[] SOURCES = {"line", "block", "javadoc", "artefact"};
+	private static final String[] WORDS = {"socket", "timeout", "connector", "thread", "cookie", "header", "parse", "value",
+			"session", "manager", "expire", "listener", "jsp", "compiler", "error", "line", "request", "response", "the", "and"};
+	private static final int DOCUMENT_COUNT = 40;
+
+	private final TermDictionary dictionary = new TermDictionary();
+	private final List<String> fileNames = new ArrayList<String>();
+	private final List<Map<String, List<String>>> documents = new ArrayList<Map<String, List<String>>>();  // source : tokens, of every file
+	private final List<String> queries = new ArrayList<String>();
+
+	public SourceTermQueryTest()
+	{
+		Random random = new Random(3);
+
+		for(int doc=0; doc<DOCUMENT_COUNT; ++doc) {
+			fileNames.add("File" + doc + ".java");
+
+			//a source is missing from some files
+			Map<String, List<String>> sources = new LinkedHashMap<String, List<String>>();
+			for(String source : SOURCES) {
+				if(random.nextInt(4) == 0)
+					continue;
+
+				List<String> tokens = new ArrayList<String>();
+				int length = 1 + random.nextInt(random.nextBoolean() ? 5 : 30);
+				for(int i=0; i<length; ++i) {
+					tokens.add(WORDS[random.nextInt(WORDS.length)]);
+				}
+				sources.put(source, tokens);
+			}
+			documents.add(sources);
+		}
+
+		for(int i=0; i<30; ++i) {
+			StringBuilder query = new StringBuilder(WORDS[random.nextInt(WORDS.length)]);
+			for(int n=random.nextInt(3); n>0; --n) {
+				query.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+			}
+			queries.add(query.toString());
+		}
+		queries.add("missing");
+		queries.add("socket missing");
+	}
+
+	@Test
+	public void fullProfile() throws IOException {
+		assertSameForEveryOption(CorpusIndex.Profile.FULL);
+	}
+
+	@Test
+	public void leanProfile() throws IOException {
+		assertSameForEveryOption(CorpusIndex.Profile.LEAN);
+	}
+
+	// every choice of sources against an index of their data field
+	private void assertSameForEveryOption(CorpusIndex.Profile profile) throws IOException
+	{
+		CorpusIndex sourceIndex = newIndex(profile);
+		for(int doc=0; doc<DOCUMENT_COUNT; ++doc) {
+			Map<String, TermDocument> sources = new LinkedHashMap<String, TermDocument>();
+			List<String> tokens = new ArrayList<String>();
+			for(Map.Entry<String, List<String>> source : documents.get(doc).entrySet()) {
+				sources.put(source.getKey(), dictionary.encode(source.getValue()));
+				tokens.addAll(source.getValue());
+			}
+			sourceIndex.prepareDocument(fileNames.get(doc), dictionary.encode(tokens).withSources(sources));
+		}
+		sourceIndex.commit();
+
+		VsmFeatureLocation sourceSearch = new VsmFeatureLocation(sourceIndex);
+		VsmDocSimilarity sourceSimilarity = new VsmDocSimilarity(sourceIndex, dictionary);
+
+		for(int option=1; option<(1 << SOURCES.length); ++option) {
+			Map<String, Float> fields = new LinkedHashMap<String, Float>();
+			for(int i=0; i<SOURCES.length; ++i) {
+				if((option & (1 << i)) != 0)
+					fields.put(SOURCES[i], 1f);
+			}
+
+			CorpusIndex dataIndex = newIndex(profile);
+			for(int doc=0; doc<DOCUMENT_COUNT; ++doc) {
+				List<String> tokens = new ArrayList<String>();
+				for(String field : fields.keySet()) {
+					List<String> sourceTokens = documents.get(doc).get(field);
+					if(sourceTokens != null)
+						tokens.addAll(sourceTokens);
+				}
+				dataIndex.prepareDocument(fileNames.get(doc), dictionary.encode(tokens));
+			}
+			dataIndex.commit();
+
+			VsmFeatureLocation dataSearch = new VsmFeatureLocation(dataIndex);
+			VsmDocSimilarity dataSimilarity = new VsmDocSimilarity(dataIndex, dictionary);
+			sourceSearch.setSearchFields(fields);
+			sourceSimilarity.setSearchFields(new ArrayList<String>(fields.keySet()));
+
+			for(String query : queries) {
+				assertEquals(fields.keySet() + " query '" + query + "'", dataSearch.VsmQuerySearch(query), sourceSearch.VsmQuerySearch(query));
+			}
+			for(String fileName : fileNames) {
+				assertEquals(fields.keySet() + " similar to " + fileName, dataSimilarity.vsmGetSimilarDocuments(fileName), sourceSimilarity.vsmGetSimilarDocuments(fileName));
+			}
+		}
+	}
+
+	private static CorpusIndex newIndex(CorpusIndex.Profile profile)
+	{
+		CorpusIndex index = new CorpusIndex();
+		index.setProfile(profile);
+		index.reset();
+		return index;
+	}
+}
@@ -0,0 +1,127 @@
+package featurelocation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+// Files of several packages with the same name are separate documents of the space, like in the corpus index
+public class SvdFeatureLocationTest
+{
+	private final TermDictionary dictionary = new TermDictionary();
+
+	@Test
+	public void keepsFilesOfTheSameName() throws IOException
+	{
+		SvdFeatureLocation svd = new SvdFeatureLocation();
+		prepare(svd, "Connector.java", "socket timeout connector thread");
+		prepare(svd, "Constants.java", "cookie header parse value");
+		prepare(svd, "Constants.java", "session manager expire listener");
+		prepare(svd, "Compiler.java", "jsp compiler error line");
+		svd.buildSemanticVectors();
+
+		assertEquals("Constants.java", svd.LsiQuerySearch("cookie header").get(0));
+		assertEquals("Constants.java", svd.LsiQuerySearch("session expire").get(0));
+		assertEquals(2, Collections.frequency(svd.LsiQuerySearch("cookie session"), "Constants.java"));
+	}
+
+	@Test
+	public void foldsInNextToFilesOfTheSameName() throws IOException
+	{
+		SvdFeatureLocation svd = new SvdFeatureLocation();
+		svd.setDriftThreshold(1);
+		prepare(svd, "Connector.java", "socket timeout connector thread");
+		prepare(svd, "Constants.java", "cookie header parse value");
+		prepare(svd, "Constants.java", "session manager expire listener");
+		svd.buildSemanticVectors();
+		List<String> before = svd.LsiQuerySearch("session expire");
+
+		prepare(svd, "Compiler.java", "jsp compiler error line");
+		svd.buildSemanticVectors();  //folded in, the files of Constants.java keep their vectors
+
+		assertEquals(1.0 / 3, svd.getDrift(), 1e-9);
+		assertEquals(before.subList(0, 3), svd.LsiQuerySearch("session expire").subList(0, 3));
+		assertEquals("Constants.java", svd.LsiQuerySearch("cookie header").get(0));
+	}
+
+	@Test
+	public void sameSpaceInAnyParseOrder() throws IOException
+	{
+		SvdFeatureLocation first = new SvdFeatureLocation();
+		prepare(first, "Constants.java", "cookie header parse value");
+		prepare(first, "Constants.java", "session manager expire listener");
+		prepare(first, "Connector.java", "socket timeout connector thread");
+		first.buildSemanticVectors();
+
+		SvdFeatureLocation second = new SvdFeatureLocation();
+		prepare(second, "Connector.java", "socket timeout connector thread");
+		prepare(second, "Constants.java", "session manager expire listener");
+		prepare(second, "Constants.java", "cookie header parse value");
+		second.buildSemanticVectors();
+
+		for(String query : new String[] {"cookie", "session", "socket", "cookie session socket"}) {
+			assertEquals(query, first.LsiQuerySearch(query), second.LsiQuerySearch(query));
+		}
+	}
+
+	@Test
+	public void keepsTheTrainingIfTheCacheFails() throws IOException
+	{
+		File rootFile = File.createTempFile("cache", ".txt");  //no entry can be created under a file
+		rootFile.deleteOnExit();
+
+		SvdFeatureLocation svd = new SvdFeatureLocation();
+		svd.setArtifactCache(new ArtifactCache(rootFile, 1L << 20));
+		svd.setQuantized(true);
+		prepare(svd, "Connector.java", "socket timeout connector thread");
+		prepare(svd, "Constants.java", "cookie header parse value");
+		prepare(svd, "Compiler.java", "jsp compiler error line");
+		svd.buildSemanticVectors();
+
+		assertEquals("Constants.java", svd.LsiQuerySearch("cookie header").get(0));
+		assertEquals("Compiler.java", svd.LsiQuerySearch("compiler error").get(0));
+	}
+
+	@Test
+	public void keepsTheStoreInTheWorkspace() throws IOException
+	{
+		File workspaceDir = Files.createTempDirectory("svdworkspace").toFile();
+
+		SvdFeatureLocation svd = new SvdFeatureLocation();
+		svd.setQuantized(true);
+		svd.openWorkspace(workspaceDir);
+		prepare(svd, "Connector.java", "socket timeout connector thread");
+		prepare(svd, "Constants.java", "cookie header parse value");
+		svd.buildSemanticVectors();
+		prepare(svd, "Compiler.java", "jsp compiler error line");
+		svd.buildSemanticVectors();  //the store of the first build is deleted
+
+		assertEquals(1, stores(workspaceDir));
+		assertEquals("Compiler.java", svd.LsiQuerySearch("compiler error").get(0));
+
+		SvdFeatureLocation reopened = new SvdFeatureLocation();
+		reopened.openWorkspace(workspaceDir);  //the store an earlier run left is deleted
+		assertEquals(0, stores(workspaceDir));
+	}
+
+	private static int stores(File workspaceDir)
+	{
+		int count = 0;
+		for(String name : workspaceDir.list()) {
+			if(name.startsWith("svdstore"))
+				++count;
+		}
+		return count;
+	}
+
+	private void prepare(SvdFeatureLocation svd, String fileName, String text)
+	{
+		svd.prepareDocument(fileName, dictionary.encode(Arrays.asList(text.split(" "))));
+	}
+}
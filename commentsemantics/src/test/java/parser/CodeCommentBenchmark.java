@@ -0,0 +1,92 @@
+package parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.javaparser.ast.comments.Comment;
+
+import queryresult.GoldSetEvaluator;
+import queryresult.ResultStore;
+
+// Times the commented code detection of CodeCommentParser on the comments of a project, the regular
+// expressions of CodeCommentRegex against the scanner, and checks that both give the same result for
+// every comment.
+// Usage: CodeCommentBenchmark [project directory, gold set sources if not given] [rounds]
+public class CodeCommentBenchmark
+{
+	public static void main(String[] args) throws IOException
+	{
+		File projDir = new File(args.length > 0 ? args[0] : GoldSetEvaluator.Goldset_Src);
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		List<String> comments = new ArrayList<String>();
+		collectComments(projDir, new CommentLexer(), comments);
+
+		long characters = 0;
+		for(String comment : comments) {
+			characters += comment.length();
+		}
+		System.out.println(comments.size() + " comments, " + characters + " characters");
+
+		CodeCommentParser parser = new CodeCommentParser(new ResultStore());
+
+		int mismatches = 0;
+		int excluded = 0;
+		for(String comment : comments) {
+			String expected = CodeCommentRegex.removeCodeComments(comment);
+			String result = parser.removeCodeComments(comment);
+
+			if(expected == null ? result != null : !expected.equals(result)) {
+				if(mismatches++ < 10)
+					System.out.println("Mismatch: " + comment);
+			}
+			if(result == null)
+				++excluded;
+		}
+		System.out.println(excluded + " comments excluded, " + mismatches + " mismatches");
+
+		for(int round=0; round<rounds; ++round) {
+			long regexTime = time(parser, comments, true);
+			long scannerTime = time(parser, comments, false);
+
+			System.out.println("Round " + (round + 1) + ": regular expressions " + regexTime / 1000000 + " ms, scanner "
+					+ scannerTime / 1000000 + " ms, " + String.format("%.1f", (double)regexTime / scannerTime) + "x");
+		}
+	}
+
+	private static long time(CodeCommentParser parser, List<String> comments, boolean regex)
+	{
+		int kept = 0;  //keeps the results in use
+
+		long start = System.nanoTime();
+		for(String comment : comments) {
+			String result = regex ? CodeCommentRegex.removeCodeComments(comment) : parser.removeCodeComments(comment);
+			if(result != null)
+				kept += result.length();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		if(kept < 0)
+			System.out.println(kept);
+		return elapsed;
+	}
+
+	private static void collectComments(File dir, CommentLexer commentLexer, List<String> comments) throws IOException
+	{
+		for(File file : dir.listFiles()) {
+
+			if(file.isDirectory())
+				collectComments(file, commentLexer, comments);
+
+			if(file.getName().endsWith(".java")) {
+				commentLexer.lex(CommentLexer.readSource(file));
+
+				for(Comment comment : commentLexer.getComments()) {
+					comments.add(comment.getContent());
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// The regular expression version of CodeCommentParser.removeCodeComments, the reference of the scanner
+class CodeCommentRegex
+{
+	private static final double THRESHOLD = 50;
+
+	private static final Pattern SEMI_COLON = Pattern.compile(";");
+	private static final Pattern ROUTINE_CALL = Pattern.compile("(\\w+\\s*\\.)*\\s*\\w+\\s*\\(([^\\)]*)\\)(\\s*|\\s*;)");
+	private static final Pattern SCOPE = Pattern.compile("(\\{|\\})");
+	private static final Pattern OPERANDS = Pattern.compile("(\\+|\\-|&&|\\||<|>|=|:|_)");
+
+	private static final List<Pattern> patternList = new ArrayList<Pattern>();
+	static {
+		patternList.add(SEMI_COLON);
+		patternList.add(CodeCommentParser.KEYWORDS);
+		patternList.add(OPERANDS);
+		patternList.add(ROUTINE_CALL);
+		patternList.add(SCOPE);
+	}
+
+	// comment without the code, null if the code is more than 50% of it
+	static String removeCodeComments(String comment)
+	{
+		String result = null;
+
+		StringBuilder evaluationString = new StringBuilder();
+
+		comment = comment.replaceAll("\\s+", " ");
+		double originalCharacterCount = comment.length();
+
+		for(Pattern pattern : patternList) {
+
+			Matcher matcher = pattern.matcher(comment);
+			while(matcher.find()) {
+				evaluationString.append(matcher.group());
+			}
+
+			comment = pattern.matcher(comment).replaceAll("");
+		}
+
+		double percentage = ((double) evaluationString.length() / originalCharacterCount) * 100L;
+
+		if(percentage <= THRESHOLD) {
+			result = comment;
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,62 @@
+package parser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import queryresult.ResultStore;
+
+// The scanner removes the same code from a comment as the regular expressions of CodeCommentRegex
+public class CodeCommentScannerTest
+{
+	private final CodeCommentParser parser = new CodeCommentParser(new ResultStore());
+
+	@Test
+	public void edgeCases()
+	{
+		String[] comments = {
+			"", " ", "\t\n", "*", "/", ";", ";;", "{}", "_", "()", "(", ")", "(((", ")))",
+			"call(", "call( without end", "call(x", "a (b", "f(a, (b)", "f(g(x))", "f((x)", "f(x));",
+			"foo.bar()", "foo . bar ()", "foo .bar( x )", "a.b.c.d(e);", "a. b .c(d) ;", ". (x)", "x.(y)", "x .  (y)",
+			"this.field = value;", "obj.method(arg1, arg2);", "Thread.sleep(100);  // wait", "return x;",
+			"catchchar", "catch char", "catch", "char", "catchcharacter", "acatchchar", "trictfp", "flaot", "strictfp",
+			"interface", "interfaces", "import java.util.List;", "doing", "done", "forever", "format", "newline",
+			"if (a && b || c) { return; }", "a<b>c", "x = y + z - w", "key: value", "snake_case_name", "a||b",
+			"// TODO remove", "/* nested */", "@param name the name", "{@link Foo#bar(int)}", "<p>html</p>",
+			"This is a plain English sentence without any code.", "Returns the value.", "See also foo()",
+			"int i = 0; i++; for (int j = 0; j < 10; j++) {}", "  leading and trailing  ", "tabs\tand\nnew\r\nlines",
+			"Ünïcödé text (with ümlauts)", "日本語(x)", " non breaking space",
+		};
+
+		for(String comment : comments) {
+			assertSame(comment);
+		}
+	}
+
+	@Test
+	public void randomComments()
+	{
+		String[] words = {"the", "value", "catch", "char", "if", "for", "new", "int", "do", "foo", "bar", "x", "get"};
+		String symbols = " ;{}()._+-&|<>=:\t\n.,a1é";
+		Random random = new Random(7);
+
+		for(int n=0; n<20000; ++n) {
+			StringBuilder comment = new StringBuilder();
+			int length = random.nextInt(40);
+			for(int i=0; i<length; ++i) {
+				if(random.nextInt(3) == 0)
+					comment.append(words[random.nextInt(words.length)]);
+				else
+					comment.append(symbols.charAt(random.nextInt(symbols.length())));
+			}
+			assertSame(comment.toString());
+		}
+	}
+
+	private void assertSame(String comment)
+	{
+		assertEquals("comment '" + comment + "'", CodeCommentRegex.removeCodeComments(comment), parser.removeCodeComments(comment));
+	}
+}
@@ -0,0 +1,145 @@
+package parser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.custom.CustomAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import queryresult.ResultStore;
+
+// The single pass tokenizer of the file parser gives the same tokens as the regex splits it replaced,
+// kept below as the reference.
+public class TokenizeNameTest
+{
+	private static FileParser parser;
+	private static List<String> stopWords;
+
+	@BeforeClass
+	public static void setUp() throws FileNotFoundException
+	{
+		parser = new FileParser(new CodeCommentParser(new ResultStore()));
+
+		stopWords = new ArrayList<String>();
+		for(String file : new String[] {"./data/javakeywords.txt", "./data/stopwords.txt"}) {
+			try(Scanner scanner = new Scanner(new File(file))) {
+				while(scanner.hasNextLine()) {
+					stopWords.add(scanner.nextLine().trim());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void namesAndComments()
+	{
+		String[] inputs = {
+			"", "a", "A", "_", "__", "ABC", "getHTTPRequest", "parseURL2Path", "my_snake_case_name", "_leading_underscore",
+			"trailing_", "CamelCase_with_Snake", "value2", "123", "x1y2z3", "MAX_VALUE", "ÄnderungÜber", "naïveCafé",
+			"straße", "日本語Name", "a.b.c", "foo()", "bar(x, y)", "end.", "...", "a--b", "e-mail", "it's", "don't",
+			"half-way.", "x==y", "i++", "  spaced  out  ", "tab\tseparated", "new\nline", "@param name the name",
+			"{@link Foo#bar(int)}", "http://example.com/path?q=1", "1st 2nd 3rd", "the interface of the class",
+			"TODO: fix this!!", "<p>html</p>", "connectors' requests", "Thread.sleep(100);", "int[] values = new int[10];",
+		};
+
+		for(String input : inputs) {
+			assertSame(input);
+		}
+	}
+
+	@Test
+	public void randomStrings()
+	{
+		String alphabet = "abcdefgxyzABCDEFGXYZ0123456789_ .,;:!?'\"()[]{}<>-+=*/\\@#$%&|~^`\t\néüßÅçñ日本";
+		Random random = new Random(42);
+
+		for(int n=0; n<20000; ++n) {
+			StringBuilder input = new StringBuilder();
+			int length = random.nextInt(30);
+			for(int i=0; i<length; ++i) {
+				input.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			}
+			assertSame(input.toString());
+		}
+	}
+
+	private static void assertSame(String input)
+	{
+		assertEquals("name '" + input + "'", referenceTokens(input, false), parser.tokenizeName(input, false));
+		assertEquals("comment '" + input + "'", referenceTokens(input, true), parser.tokenizeName(input, true));
+	}
+
+	// the tokenizer before the single pass, one analyzer per part
+	private static List<String> referenceTokens(String name, boolean removePunct)
+	{
+		List<String> tokenList = new ArrayList<String>();
+		for(String camel : name.split("(?=[A-Z])")) {
+			for(String snake : camel.split("_")) {
+				tokenList.add(snake.replaceAll("[0-9]", ""));
+			}
+		}
+
+		List<String> tempTokens = new ArrayList<String>();
+		for(String token : tokenList) {
+			tempTokens.addAll(analyze(token));
+		}
+		tokenList = tempTokens;
+
+		for(int i=0; i<tokenList.size(); ++i) {
+			if(stopWords.contains(tokenList.get(i)) || tokenList.get(i).length() < 2) {
+				tokenList.remove(i);
+				--i;
+			}
+		}
+
+		if(!removePunct)
+			return tokenList;
+
+		tempTokens = new ArrayList<String>();
+		Pattern pattern = Pattern.compile("\\p{Punct}+|\\d+|\\s+");
+		for(String token : tokenList) {
+			for(String part : pattern.split(token)) {
+				tempTokens.add(part);
+			}
+		}
+		return tempTokens;
+	}
+
+	private static List<String> analyze(String string)
+	{
+		List<String> result = new ArrayList<String>();
+		try {
+			Analyzer analyzer = CustomAnalyzer.builder()
+					.withTokenizer("standard")
+					.addTokenFilter("lowercase")
+					.addTokenFilter("stop")
+					.addTokenFilter("porterstem")
+					.build();
+
+			try(TokenStream stream = analyzer.tokenStream(null, new StringReader(string))) {
+				stream.reset();
+				while(stream.incrementToken()) {
+					result.add(stream.getAttribute(CharTermAttribute.class).toString());
+				}
+				stream.end();
+			}
+		}
+		catch(IOException e) {
+			throw new RuntimeException(e);
+		}
+		return result;
+	}
+}